@@ -78,6 +78,7 @@ public class L2ExplorerDat extends JFrame
     private final JButton _massUnpackButton;
     private final JButton _massPackButton;
     private final JButton _massRecryptButton;
+    private final JButton _massVerifyButton;
     private final JButton _updateNotifyButton;
     private JLabel _lblStructure;
     private JLabel _lblEncrypt;
@@ -284,6 +285,7 @@ public class L2ExplorerDat extends JFrame
         _massUnpackButton = createModernButton(i18n("decrypt.all.btn"), ACCENT_COLOR);
         _massPackButton = createModernButton(i18n("encrypt.all.btn"), ACCENT_COLOR);
         _massRecryptButton = createModernButton(i18n("patch.all.btn"), ACCENT_COLOR);
+        _massVerifyButton = createModernButton(i18n("verify.all.btn"), ACCENT_COLOR);
         _updateNotifyButton = createModernButton(i18n("update.notify.btn"), SUCCESS_COLOR);
         _progressBar = new ModernProgressBar();
         _abortTaskButton = createModernButton(i18n("abort.btn"), DANGER_COLOR);
@@ -357,6 +359,9 @@ public class L2ExplorerDat extends JFrame
         _massRecryptButton.setToolTipText(i18n("patch.all.btn.tooltip"));
         _massRecryptButton.addActionListener(this::massRecryptActionPerformed);
 
+        _massVerifyButton.setToolTipText(i18n("verify.all.btn.tooltip"));
+        _massVerifyButton.addActionListener(this::massVerifyActionPerformed);
+
         _updateNotifyButton.setToolTipText(i18n("notify.btn.tooltip"));
         _updateNotifyButton.setVisible(false);
         _updateNotifyButton.addActionListener(e -> UpdaterDialog.showUpdateDialog(this));
@@ -381,6 +386,8 @@ public class L2ExplorerDat extends JFrame
         actionsButtonPanel.add(_massPackButton);
         actionsButtonPanel.add(Box.createRigidArea(new Dimension(0, spacing)));
         actionsButtonPanel.add(_massRecryptButton);
+        actionsButtonPanel.add(Box.createRigidArea(new Dimension(0, spacing)));
+        actionsButtonPanel.add(_massVerifyButton);
         actionsButtonPanel.add(Box.createRigidArea(new Dimension(0, 15)));
         actionsButtonPanel.add(new JSeparator());
         actionsButtonPanel.add(Box.createRigidArea(new Dimension(0, 15)));
@@ -653,6 +660,7 @@ public class L2ExplorerDat extends JFrame
         _massUnpackButton.setText(i18n("decrypt.all.btn"));
         _massPackButton.setText(i18n("encrypt.all.btn"));
         _massRecryptButton.setText(i18n("patch.all.btn"));
+        _massVerifyButton.setText(i18n("verify.all.btn"));
         _abortTaskButton.setText(i18n("abort.btn"));
         _updateNotifyButton.setText(i18n("update.notify.btn"));
 
@@ -661,6 +669,7 @@ public class L2ExplorerDat extends JFrame
         _massUnpackButton.setToolTipText(i18n("decrypt.all.btn.tooltip"));
         _massPackButton.setToolTipText(i18n("pack.all.btn.tooltip"));
         _massRecryptButton.setToolTipText(i18n("patch.all.btn.tooltip"));
+        _massVerifyButton.setToolTipText(i18n("verify.all.btn.tooltip"));
         _abortTaskButton.setToolTipText(i18n("abort.btn.tooltip"));
         _themeToggleButton.setText(i18n("toggle.theme"));
         _aboutButton.setText(i18n("about.btn"));
@@ -1078,6 +1087,31 @@ public class L2ExplorerDat extends JFrame
         }
     }
 
+    private void massVerifyActionPerformed(ActionEvent evt)
+    {
+        if (_progressTask != null)
+        {
+            return;
+        }
+
+        final JFileChooser fileopen = new JFileChooser();
+        fileopen.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        fileopen.setAcceptAllFileFilterUsed(false);
+        fileopen.setCurrentDirectory(new File(ConfigWindow.FILE_OPEN_CURRENT_DIRECTORY));
+        fileopen.setPreferredSize(new Dimension(700, 500));
+
+        final int ret = fileopen.showDialog(this, i18n("select.btn"));
+        if (ret == JFileChooser.APPROVE_OPTION)
+        {
+            _currentFileWindow = fileopen.getSelectedFile();
+            ConfigWindow.save("FILE_OPEN_CURRENT_DIRECTORY", _currentFileWindow.getPath());
+            addLogConsole(i18n("log.divider"), true);
+            addLogConsole(i18n("log.folder.selected.verify", _currentFileWindow.getPath()), true);
+            _progressTask = new MassVerifier(this, _currentFileWindow.getPath());
+            _executorService.execute(_progressTask);
+        }
+    }
+
     private void openSelectFileWindow(ActionEvent evt)
     {
         if (_progressTask != null)
@@ -18,6 +18,7 @@ package org.l2explorer.actions;
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 
 import javax.swing.SwingWorker;
@@ -27,7 +28,10 @@ import org.l2explorer.L2ExplorerDat;
 public abstract class ActionTask extends SwingWorker<Void, Void> implements PropertyChangeListener
 {
 	protected final L2ExplorerDat _l2clientdat;
-	private double _progress = 0.0;
+	private final Object _progressLock = new Object();
+	private volatile double _progress = 0.0;
+	/** Progress of the part run by the current thread, see {@link #runPart(Callable)}. */
+	private final ThreadLocal<double[]> _partProgress = new ThreadLocal<>();
 
 	public ActionTask(L2ExplorerDat l2clientdat)
 	{
@@ -68,22 +72,62 @@ public abstract class ActionTask extends SwingWorker<Void, Void> implements Prop
 
 	public double addProgress(double progress, double value, double weight)
 	{
-		changeProgress(_progress = getWeightValue(value, weight) + progress);
-		return _progress;
+		final double next = getWeightValue(value, weight) + progress;
+		final double[] part = _partProgress.get();
+		if (part == null)
+		{
+			_progress = next;
+			changeProgress(next);
+			return next;
+		}
+
+		final double total;
+		synchronized (_progressLock)
+		{
+			total = _progress += next - part[0];
+		}
+		part[0] = next;
+		changeProgress(total);
+		return next;
 	}
 
 	public void changeProgress(double value)
 	{
 		final int intValue = (int) Math.max(0.0, Math.min(100.0, value));
-		if (intValue > getProgress())
+		synchronized (_progressLock)
 		{
-			setProgress(intValue);
+			if (intValue > getProgress())
+			{
+				setProgress(intValue);
+			}
 		}
 	}
 
 	public double getCurrentProgress()
 	{
-		return _progress;
+		final double[] part = _partProgress.get();
+		return (part != null) ? part[0] : _progress;
+	}
+
+	/**
+	 * Runs a part of this task on the current thread, so several threads can share one task.<br>
+	 * Inside the part the progress starts from 0 and each step is added to the progress of the whole task.
+	 * @param <T> the result type
+	 * @param part the work to run
+	 * @return the result of {@code part}
+	 * @throws Exception the failure of {@code part}
+	 */
+	public <T> T runPart(Callable<T> part) throws Exception
+	{
+		_partProgress.set(new double[1]);
+		try
+		{
+			return part.call();
+		}
+		finally
+		{
+			_partProgress.remove();
+		}
 	}
 
 	public double getWeightValue(double value, double weight)
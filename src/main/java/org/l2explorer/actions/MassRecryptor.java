@@ -17,9 +17,7 @@
 package org.l2explorer.actions;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
@@ -115,20 +113,16 @@ public class MassRecryptor extends ActionTask
 			
 			READ:
 			{
-				try (FileInputStream fis = new FileInputStream(file))
+				try
 				{
-					if (fis.available() < 28)
+					if (file.length() < DatFile.HEADER_SIZE)
 					{
 						L2ExplorerDat.addLogConsole("The file " + file.getName() + " is too small.", true);
 						break READ;
 					}
 					
-					final byte[] head = new byte[28];
-					fis.read(head);
-					fis.close();
-					
-					final String header = new String(head, StandardCharsets.UTF_16LE);
-					if (!header.matches("Lineage2Ver41[1-4]"))
+					final int cryptCode = DatFile.readCryptCode(file);
+					if ((cryptCode < 411) || (cryptCode > 414))
 					{
 						L2ExplorerDat.addLogConsole("File " + file.getName() + " not encrypted. Skip decrypt.", true);
 						break READ;
@@ -17,9 +17,19 @@
 package org.l2explorer.actions;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,14 +40,19 @@ import org.l2explorer.clientcryptor.crypt.RSADatCrypter;
 import org.l2explorer.config.ConfigDebug;
 import org.l2explorer.config.ConfigWindow;
 import org.l2explorer.data.GameDataName;
+import org.l2explorer.util.ThreadPool;
 import org.l2explorer.xml.CryptVersionParser;
 import org.l2explorer.xml.Descriptor;
 import org.l2explorer.xml.DescriptorParser;
 import org.l2explorer.xml.DescriptorWriter;
+import org.l2explorer.xml.exceptions.CycleArgumentException;
+import org.l2explorer.xml.exceptions.PackDataException;
 
 public class MassTxtPacker extends ActionTask
 {
 	private static final Logger LOGGER = Logger.getLogger(MassTxtPacker.class.getName());
+	/** Share of the progress of a file taken by the dry run of the parallel pack. */
+	private static final double COLLECT_WEIGHT = 30.0;
 	
 	private final String _chronicle;
 	private final String _path;
@@ -117,19 +132,29 @@ public class MassTxtPacker extends ActionTask
 		{
 			if (file.getName().equalsIgnoreCase("L2GameDataName.txt"))
 			{
-				pack(this, progressWeight, _chronicle, encrypter, file, packDir);
+				printLogs(pack(this, progressWeight, _chronicle, encrypter, file, packDir));
 				break;
 			}
 		}
 		
+		final List<File> others = new ArrayList<>(files.length);
 		for (File file : files)
 		{
 			if (!file.getName().equalsIgnoreCase("L2GameDataName.txt"))
 			{
-				pack(this, progressWeight, _chronicle, encrypter, file, packDir);
+				others.add(file);
 			}
 		}
 		
+		if (ThreadPool.getInstance().getFileThreads() > 1)
+		{
+			packParallel(others, encrypter, packDir, progressWeight);
+		}
+		else
+		{
+			packSerial(others, encrypter, packDir, progressWeight);
+		}
+		
 		if (isCancelled())
 		{
 			return;
@@ -148,10 +173,159 @@ public class MassTxtPacker extends ActionTask
 		L2ExplorerDat.addLogConsole("Completed. Elapsed ".concat(String.valueOf(diffTime)).concat(" sec"), true);
 	}
 	
-	private static void pack(ActionTask actionTask, double weight, String chronicle, DatCrypter encrypter, File file, File packDir)
+	private void packSerial(List<File> files, DatCrypter encrypter, File packDir, double weight)
+	{
+		for (File file : files)
+		{
+			printLogs(pack(this, weight, _chronicle, encrypter, file, packDir));
+		}
+	}
+	
+	/**
+	 * Packs the files on the file pool, with the output of a serial pack.<br>
+	 * The names of {@code MAP_INT} fields get their ids in the order they are met, so the new ones are first collected by a dry run of every file, numbered in file order, and only then are the files packed against the complete table.<br>
+	 * If the dry run of a file fails, the names can no longer be numbered in order and the files are packed one by one instead.
+	 */
+	private void packParallel(List<File> files, DatCrypter encrypter, File packDir, double weight) throws Exception
+	{
+		final ThreadPool pool = ThreadPool.getInstance();
+		double packWeight = weight;
+		if (ConfigDebug.DAT_REPLACEMENT_NAMES)
+		{
+			final double collectWeight = getWeightValue(COLLECT_WEIGHT, weight);
+			packWeight -= collectWeight;
+			final List<Future<List<String>>> names = new ArrayList<>(files.size());
+			boolean collected = true;
+			GameDataName.getInstance().setDeferNewNames(true);
+			try
+			{
+				for (File file : files)
+				{
+					names.add(pool.submitFile(() -> runPart(() -> collectNames(this, collectWeight, _chronicle, encrypter, file, packDir))));
+				}
+				for (int i = 0; i < names.size(); i++)
+				{
+					try
+					{
+						names.get(i).get();
+					}
+					catch (ExecutionException e)
+					{
+						LOGGER.log(Level.WARNING, "Cannot collect the names of [" + files.get(i).getName() + "], packing the files one by one: " + e.getCause().getMessage(), e.getCause());
+						collected = false;
+					}
+				}
+			}
+			finally
+			{
+				GameDataName.getInstance().setDeferNewNames(false);
+			}
+			
+			if (isCancelled())
+			{
+				return;
+			}
+			
+			if (!collected)
+			{
+				packSerial(files, encrypter, packDir, packWeight);
+				return;
+			}
+			
+			for (Future<List<String>> fileNames : names)
+			{
+				GameDataName.getInstance().addNames(fileNames.get());
+			}
+		}
+		
+		// Biggest files first, so a huge one does not run alone at the end. Logs still come out in directory order.
+		final List<File> schedule = new ArrayList<>(files);
+		schedule.sort(Comparator.comparingLong(File::length).reversed());
+		final double fileWeight = packWeight;
+		final List<Future<List<String>>> results = new ArrayList<>(Collections.nCopies(files.size(), null));
+		for (File file : schedule)
+		{
+			results.set(files.indexOf(file), pool.submitFile(() -> runPart(() -> pack(this, fileWeight, _chronicle, encrypter, file, packDir))));
+		}
+		
+		for (Future<List<String>> result : results)
+		{
+			printLogs(result.get());
+			if (isCancelled())
+			{
+				for (Future<List<String>> pending : results)
+				{
+					pending.cancel(false);
+				}
+				return;
+			}
+		}
+	}
+	
+	private static void printLogs(List<String> logs)
+	{
+		for (String log : logs)
+		{
+			L2ExplorerDat.addLogConsole(log, true);
+		}
+	}
+	
+	/**
+	 * Dry run of {@link #pack} for the parallel pack: the file is packed into nothing, only the new names it meets are kept.
+	 * @return the new names, in the order they were met
+	 * @throws Exception if the dry run fails for another reason than an error in the text, its names are then dropped
+	 */
+	private static List<String> collectNames(ActionTask actionTask, double weight, String chronicle, DatCrypter encrypter, File file, File packDir) throws Exception
 	{
+		final List<String> names;
+		try
+		{
+			if (file.getName().endsWith(".dat") || file.getName().endsWith(".txt"))
+			{
+				final Descriptor desc = DescriptorParser.getInstance().findDescriptorForFile(chronicle, file.getName().replace(".txt", ".dat"));
+				if (desc != null)
+				{
+					final File outFile = new File(packDir, file.getName().replace(".txt", ".dat"));
+					if (!DescriptorWriter.packData(actionTask, weight, outFile, encrypter, desc, () -> openText(file), OutputStream.nullOutputStream(), true) && !actionTask.isCancelled())
+					{
+						DescriptorWriter.parseData(actionTask, weight, outFile, encrypter, desc, readText(file), true);
+					}
+				}
+			}
+		}
+		catch (PackDataException | CycleArgumentException e)
+		{
+			// Errors in the text: the real pack stops at the same place, after the same names, and reports it.
+		}
+		finally
+		{
+			// Taken even on failure, so the names do not leak into the next file of this worker.
+			names = GameDataName.getInstance().takeDeferredNames();
+			actionTask.addProgress(0.0, weight, 100.0);
+		}
+		return names;
+	}
+	
+	private static InputStreamReader openText(File file) throws IOException
+	{
+		return new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+	}
+	
+	private static String readText(File file) throws IOException
+	{
+		final byte[] array = Files.readAllBytes(file.toPath());
+		final String joined = new String(array, 0, array.length, StandardCharsets.UTF_8);
+		return joined.replace("\n", "\r\n");
+	}
+	
+	/**
+	 * @return the console lines of this file, in order
+	 */
+	private static List<String> pack(ActionTask actionTask, double weight, String chronicle, DatCrypter encrypter, File file, File packDir)
+	{
+		final List<String> logs = new ArrayList<>();
 		double progress = actionTask.getCurrentProgress();
-		L2ExplorerDat.addLogConsole("Start packing [" + file.getName() + "]...", true);
+		logs.add("Start packing [" + file.getName() + "]...");
 		
 		try
 		{
@@ -164,9 +338,17 @@ public class MassTxtPacker extends ActionTask
 				final Descriptor desc = DescriptorParser.getInstance().findDescriptorForFile(chronicle, file.getName().replace(".txt", ".dat"));
 				if (desc != null)
 				{
-					final byte[] array = Files.readAllBytes(file.toPath());
-					final String joined = new String(array, 0, array.length, StandardCharsets.UTF_8);
-					buff = DescriptorWriter.parseData(actionTask, actionTask.getWeightValue(80.0, weight), outFile, encrypter, desc, joined.replace("\n", "\r\n"), true);
+					final double packWeight = actionTask.getWeightValue(80.0, weight);
+					if (DatFile.write(outFile.getPath(), ConfigDebug.ENCRYPT ? encrypter : null, os -> DescriptorWriter.packData(actionTask, packWeight, outFile, encrypter, desc, () -> openText(file), os, true)))
+					{
+						logs.add("Success packed [" + file.getName() + "]");
+						shouldContinue = false;
+					}
+					else if (!actionTask.isCancelled())
+					{
+						buff = DescriptorWriter.parseData(actionTask, packWeight, outFile, encrypter, desc, readText(file), true);
+					}
+					
 					if (actionTask.isCancelled())
 					{
 						shouldContinue = false;
@@ -175,7 +357,7 @@ public class MassTxtPacker extends ActionTask
 				}
 				else
 				{
-					L2ExplorerDat.addLogConsole("Not found the structure of the file: " + file.getName(), true);
+					logs.add("Not found the structure of the file: " + file.getName());
 				}
 			}
 			else if (file.getName().endsWith(".ini"))
@@ -186,7 +368,7 @@ public class MassTxtPacker extends ActionTask
 			}
 			else
 			{
-				L2ExplorerDat.addLogConsole("Unknown file [" + file.getName() + "] type!", true);
+				logs.add("Unknown file [" + file.getName() + "] type!");
 				shouldContinue = false;
 			}
 			
@@ -204,7 +386,7 @@ public class MassTxtPacker extends ActionTask
 						os.write(buff);
 						os.close();
 					}
-					L2ExplorerDat.addLogConsole("Success packed [" + file.getName() + "]", true);
+					logs.add("Success packed [" + file.getName() + "]");
 				}
 				catch (Exception e)
 				{
@@ -214,7 +396,7 @@ public class MassTxtPacker extends ActionTask
 			
 			if (actionTask.isCancelled())
 			{
-				return;
+				return logs;
 			}
 			
 			actionTask.addProgress(progress, 20.0, weight);
@@ -223,5 +405,6 @@ public class MassTxtPacker extends ActionTask
 		{
 			LOGGER.log(Level.WARNING, e2.getMessage(), e2);
 		}
+		return logs;
 	}
 }
@@ -17,16 +17,22 @@
 package org.l2explorer.actions;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.l2explorer.L2ExplorerDat;
-import org.l2explorer.clientcryptor.crypt.DatCrypter;
+import org.l2explorer.clientcryptor.DatFile;
 import org.l2explorer.data.GameDataName;
+import org.l2explorer.util.ThreadPool;
 
 public class MassTxtUnpacker extends ActionTask
 {
@@ -83,72 +89,117 @@ public class MassTxtUnpacker extends ActionTask
 		
 		GameDataName.getInstance().clear();
 		final long startTime = System.currentTimeMillis();
-		double progress = getCurrentProgress();
 		final double progressWeight = 100.0 / files.length;
 		
-		for (File file : files)
+		// Biggest files first, so a huge one does not run alone at the end. Logs still come out in directory order.
+		final Integer[] schedule = new Integer[files.length];
+		for (int i = 0; i < files.length; i++)
 		{
+			schedule[i] = i;
+		}
+		Arrays.sort(schedule, Comparator.comparingLong((Integer i) -> files[i].length()).reversed());
+		
+		final List<Future<List<String>>> results = new ArrayList<>(Collections.nCopies(files.length, null));
+		for (int index : schedule)
+		{
+			final File file = files[index];
+			results.set(index, ThreadPool.getInstance().submitFile(() -> runPart(() -> unpack(file, unpackDirPath, progressWeight))));
+		}
+		
+		for (Future<List<String>> result : results)
+		{
+			try
+			{
+				for (String log : result.get())
+				{
+					L2ExplorerDat.addLogConsole(log, true);
+				}
+			}
+			catch (InterruptedException | ExecutionException e)
+			{
+				if (!isCancelled())
+				{
+					LOGGER.log(Level.WARNING, e.getMessage(), e);
+				}
+			}
+			
 			if (isCancelled())
 			{
+				for (Future<List<String>> pending : results)
+				{
+					pending.cancel(false);
+				}
 				L2ExplorerDat.addLogConsole("Cancelled.", true);
 				return;
 			}
-			
-			try (FileInputStream fis = new FileInputStream(file))
+		}
+		
+		final long diffTime = (System.currentTimeMillis() - startTime) / 1000L;
+		L2ExplorerDat.addLogConsole("Completed. Elapsed ".concat(String.valueOf(diffTime)).concat(" sec"), true);
+	}
+	
+	/**
+	 * Unpacks one file, on a worker of the file pool.
+	 * @return the console lines of this file, in order
+	 */
+	private List<String> unpack(File file, String unpackDirPath, double progressWeight)
+	{
+		final List<String> logs = new ArrayList<>();
+		if (isCancelled())
+		{
+			return logs;
+		}
+		
+		try
+		{
+			logs.add("Start unpacking [" + file.getName() + "]...");
+			if (file.length() < DatFile.HEADER_SIZE)
 			{
-				L2ExplorerDat.addLogConsole("Start unpacking [" + file.getName() + "]...", true);
-				if (fis.available() < 28)
+				logs.add("[" + file.getName() + "] is too small.");
+			}
+			else
+			{
+				final int cryptCode = DatFile.readCryptCode(file);
+				if (((cryptCode < 411) || (cryptCode > 414)) && (cryptCode != 111))
 				{
-					L2ExplorerDat.addLogConsole("[" + file.getName() + "] is too small.", true);
+					logs.add("[" + file.getName() + "] not encrypted. Skip decrypt.");
 				}
-				else
+				else if (file.getName().toLowerCase().endsWith(".dat"))
 				{
-					final byte[] head = new byte[28];
-					fis.read(head);
-					fis.close();
-					final String header = new String(head, StandardCharsets.UTF_16LE);
-					if (!header.matches("Lineage2Ver41[1-4]") && (!header.matches("Lineage2Ver111")))
+					final String name = file.getName().substring(0, file.getName().length() - 4) + ".txt";
+					if (OpenDat.unpack(this, progressWeight, _chronicle, file, Paths.get(unpackDirPath, name)))
 					{
-						L2ExplorerDat.addLogConsole("[" + file.getName() + "] not encrypted. Skip decrypt.", true);
+						logs.add("Success unpacked [" + file.getName() + "]");
 					}
 					else
 					{
-						final String text = OpenDat.start(this, progressWeight, _chronicle, file, true);
-						if (text == null)
-						{
-							L2ExplorerDat.addLogConsole("Cannot parse [" + file.getName() + "]", true);
-						}
-						else if (!text.isEmpty())
-						{
-							final DatCrypter crypter = OpenDat.getLastDatCrypter(file);
-							String charset = "UTF-8";
-							String name = file.getName();
-							if (crypter.isUseStructure() && file.getName().endsWith(".dat"))
-							{
-								name = name.replace(".dat", ".txt");
-							}
-							else if (name.endsWith(".htm"))
-							{
-								charset = "UTF-16";
-							}
-							
-							Files.write(Paths.get(unpackDirPath, name), text.getBytes(charset));
-							L2ExplorerDat.addLogConsole("Success unpacked [" + file.getName() + "]", true);
-						}
+						logs.add("Cannot parse [" + file.getName() + "]");
+					}
+				}
+				else
+				{
+					final String text = OpenDat.start(this, progressWeight, _chronicle, file, true);
+					if (text == null)
+					{
+						logs.add("Cannot parse [" + file.getName() + "]");
+					}
+					else if (!text.isEmpty())
+					{
+						final String charset = file.getName().endsWith(".htm") ? "UTF-16" : "UTF-8";
+						Files.write(Paths.get(unpackDirPath, file.getName()), text.getBytes(charset));
+						logs.add("Success unpacked [" + file.getName() + "]");
 					}
 				}
-			}
-			catch (Exception e3)
-			{
-				LOGGER.log(Level.WARNING, ("[" + file.getName() + "] decrypt failed."));
-			}
-			finally
-			{
-				progress = addProgress(progress, progressWeight, 100.0);
 			}
 		}
-		
-		final long diffTime = (System.currentTimeMillis() - startTime) / 1000L;
-		L2ExplorerDat.addLogConsole("Completed. Elapsed ".concat(String.valueOf(diffTime)).concat(" sec"), true);
+		catch (Exception e3)
+		{
+			LOGGER.log(Level.WARNING, ("[" + file.getName() + "] decrypt failed."));
+		}
+		finally
+		{
+			addProgress(0.0, progressWeight, 100.0);
+		}
+		return logs;
 	}
 }
@@ -0,0 +1,102 @@
+/*
+ * This file is part of the L2ExplorerDat project.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.l2explorer.actions;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.l2explorer.L2ExplorerDat;
+import org.l2explorer.clientcryptor.DatFile;
+import org.l2explorer.clientcryptor.DatFile.Integrity;
+
+public class MassVerifier extends ActionTask
+{
+	private final String _path;
+	
+	public MassVerifier(L2ExplorerDat l2ClientDat, String path)
+	{
+		super(l2ClientDat);
+		_path = path;
+	}
+	
+	@Override
+	protected void action()
+	{
+		L2ExplorerDat.addLogConsole("Mass verify by path [" + _path + "]", true);
+		
+		final File baseDir = new File(_path);
+		if (!baseDir.exists())
+		{
+			L2ExplorerDat.addLogConsole("Directory [" + _path + "] does not exists.", true);
+			return;
+		}
+		
+		final File[] files = baseDir.listFiles(pathname -> pathname.isFile() && (pathname.length() >= DatFile.HEADER_SIZE));
+		if ((files == null) || (files.length == 0))
+		{
+			L2ExplorerDat.addLogConsole("Directory [" + _path + "] is empty.", true);
+			return;
+		}
+		
+		Arrays.sort(files);
+		final double progress = getCurrentProgress();
+		final double progressWeight = 100.0 / files.length;
+		final long startTime = System.currentTimeMillis();
+		final Map<Integrity, Integer> counts = new EnumMap<>(Integrity.class);
+		int failed = 0;
+		L2ExplorerDat.addLogConsole("---------------------------------------", true);
+		
+		for (int i = 0; i < files.length; i++)
+		{
+			if (isCancelled())
+			{
+				return;
+			}
+			
+			final File file = files[i];
+			try
+			{
+				final Integrity integrity = new DatFile(file.getPath()).verify();
+				counts.merge(integrity, 1, Integer::sum);
+				if (integrity != Integrity.NO_FOOTER)
+				{
+					L2ExplorerDat.addLogConsole((integrity.isValid() ? "" : "BAD: ") + file.getName() + " " + integrity.getDescription() + ".", true);
+				}
+			}
+			catch (Exception e)
+			{
+				failed++;
+				L2ExplorerDat.addLogConsole("BAD: " + file.getName() + " can not be read: " + e.getMessage(), true);
+			}
+			addProgress(progress, (i + 1) * 100.0, progressWeight);
+		}
+		
+		L2ExplorerDat.addLogConsole("---------------------------------------", true);
+		final StringBuilder summary = new StringBuilder("Checked " + files.length + " files:");
+		for (Map.Entry<Integrity, Integer> entry : counts.entrySet())
+		{
+			summary.append(' ').append(entry.getKey().getDescription()).append(": ").append(entry.getValue()).append(',');
+		}
+		summary.append(" unreadable: ").append(failed);
+		L2ExplorerDat.addLogConsole(summary.toString(), true);
+		
+		final long diffTime = (System.currentTimeMillis() - startTime) / 1000L;
+		L2ExplorerDat.addLogConsole("Completed. Elapsed ".concat(String.valueOf(diffTime)).concat(" sec"), true);
+	}
+}
@@ -25,16 +25,22 @@ import org.l2explorer.xml.CryptVersionParser;
 import org.l2explorer.xml.Descriptor;
 import org.l2explorer.xml.DescriptorParser;
 import org.l2explorer.xml.DescriptorReader;
+import org.l2explorer.xml.RecordIndex;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -42,7 +48,8 @@ public class OpenDat extends ActionTask
 {
 	private static final Logger LOGGER = Logger.getLogger(OpenDat.class.getName());
 
-	private static final Map<String, DatCrypter> LAST_DAT_CRYPTERS = new HashMap<>();
+	private static final Map<String, DatCrypter> LAST_DAT_CRYPTERS = new ConcurrentHashMap<>();
+	private static final Map<String, DatCrypter> LAST_DIRECTORY_CRYPTERS = new ConcurrentHashMap<>();
 
 	protected final String _structureChronicle;
 	protected final File _file;
@@ -79,6 +86,13 @@ public class OpenDat extends ActionTask
 		}
 	}
 
+	/**
+	 * @param file the file to read
+	 * @param decryptors the keys allowed for this file, or {@code null} to use every key declared for its header code
+	 * @param mass {@code true} to keep the console quiet
+	 * @return the decrypted content, the raw content for a file that is not encrypted, or {@code null} on failure
+	 * @throws Exception
+	 */
 	public static ByteBuffer decrypt(File file, Collection<DatCrypter> decryptors, boolean mass) throws Exception
 	{
 		final String fileName = file.getName();
@@ -100,71 +114,62 @@ public class OpenDat extends ActionTask
 			return null;
 		}
 
-		final FileInputStream fis = new FileInputStream(file);
-		if (fis.available() < 28)
+		if (file.length() < DatFile.HEADER_SIZE)
 		{
 			if (!mass)
 			{
 				L2ExplorerDat.addLogConsole("The file " + fileName + " is too small.", true);
 			}
-			fis.close();
 			return null;
 		}
 
-		boolean crypt = true;
-		final byte[] head = new byte[28];
-		fis.read(head);
-		fis.close();
-		final String header = new String(head, StandardCharsets.UTF_16LE);
-		if (!header.matches("Lineage2Ver(\\d{3})"))
+		final int cryptCode = DatFile.readCryptCode(file);
+		if (cryptCode < 0)
 		{
 			if (!mass)
 			{
 				L2ExplorerDat.addLogConsole("File " + fileName + " not encrypted. Skip decrypt.", true);
 			}
-			crypt = false;
 		}
 		ByteBuffer buffer = null;
-		if (crypt)
+		if (cryptCode >= 0)
 		{
-			final int cryptCode = Integer.parseInt(header.replaceFirst("Lineage2Ver(\\d{3})", "$1"));
 			if (!mass)
 			{
-				L2ExplorerDat.addLogConsole("File " + fileName + " encrypted. " + header + " decrypt ...", true);
+				L2ExplorerDat.addLogConsole("File " + fileName + " encrypted. Lineage2Ver" + cryptCode + " decrypt ...", true);
 			}
 
 			DatCrypter crypter = null;
-			for (DatCrypter c : decryptors)
+			Exception error = null;
+			for (DatCrypter c : getCandidates(file, cryptCode, decryptors))
 			{
-				if (c.getCode() == cryptCode)
+				try
 				{
-					try
-					{
-						final DatFile dat = new DatFile(file.getPath());
-						dat.decrypt(c);
-						buffer = dat.getBuff();
-						if (buffer != null)
-						{
-							crypter = c;
-							break;
-						}
-						continue;
-					}
-					catch (Exception ex)
+					final DatFile dat = new DatFile(file.getPath());
+					dat.decrypt(c);
+					buffer = dat.getBuff();
+					if (buffer != null)
 					{
+						crypter = c;
+						break;
 					}
 				}
+				catch (Exception ex)
+				{
+					error = ex;
+				}
 			}
 
 			if (crypter == null)
 			{
 				if (!mass)
 				{
-					L2ExplorerDat.addLogConsole("Error decrypt " + fileName + " file.", true);
+					L2ExplorerDat.addLogConsole("Error decrypt " + fileName + " file." + ((error != null) ? " " + error.getMessage() : ""), true);
 				}
 				return null;
 			}
 
+			LAST_DIRECTORY_CRYPTERS.put(getDirectoryKey(file, cryptCode), crypter);
 			OpenDat.LAST_DAT_CRYPTERS.put(file.getAbsolutePath().toLowerCase(), crypter);
 			DebugUtil.save(buffer, file);
 			if (!mass)
@@ -195,7 +200,109 @@ public class OpenDat extends ActionTask
 
 	public static ByteBuffer decrypt(File file, boolean mass) throws Exception
 	{
-		return decrypt(file, CryptVersionParser.getInstance().getDecryptKeys().values(), mass);
+		return decrypt(file, null, mass);
+	}
+
+	/**
+	 * Orders the keys to try on a file: the key that last worked in the same directory for the same code first, then the others of that code.
+	 * @param file the file to decrypt
+	 * @param cryptCode the code of its header
+	 * @param decryptors the keys allowed by the caller, or {@code null} for all the known keys
+	 * @return the keys to try, in order
+	 */
+	private static List<DatCrypter> getCandidates(File file, int cryptCode, Collection<DatCrypter> decryptors)
+	{
+		final Collection<DatCrypter> keys = (decryptors == null) ? CryptVersionParser.getInstance().getDecryptKeys(cryptCode) : decryptors;
+		final List<DatCrypter> candidates = new ArrayList<>(keys.size());
+		final DatCrypter last = LAST_DIRECTORY_CRYPTERS.get(getDirectoryKey(file, cryptCode));
+		if ((last != null) && keys.contains(last))
+		{
+			candidates.add(last);
+		}
+		for (DatCrypter c : keys)
+		{
+			if ((c.getCode() == cryptCode) && (c != last))
+			{
+				candidates.add(c);
+			}
+		}
+		return candidates;
+	}
+
+	private static String getDirectoryKey(File file, int cryptCode)
+	{
+		return file.getAbsoluteFile().getParent().toLowerCase() + "|" + cryptCode;
+	}
+
+	/**
+	 * Unpacks a structured .dat file straight into {@code target}, without building the whole text in memory.
+	 * @param actionTask the running task
+	 * @param weight the progress weight of this file
+	 * @param structureChronicle the chronicle of the descriptors
+	 * @param file the .dat file
+	 * @param target the text file to write
+	 * @return {@code true} if the file was fully unpacked, otherwise the target is removed
+	 * @throws Exception
+	 */
+	public static boolean unpack(ActionTask actionTask, double weight, String structureChronicle, File file, Path target) throws Exception
+	{
+		final ByteBuffer buffer = decrypt(file, true);
+		final DatCrypter crypter = getLastDatCrypter(file);
+		if ((buffer == null) || (crypter == null) || !crypter.isUseStructure())
+		{
+			return false;
+		}
+
+		double progress = actionTask.getCurrentProgress();
+		final Descriptor desc = DescriptorParser.getInstance().findDescriptorForFile(structureChronicle, file.getName().toLowerCase());
+		if ((desc == null) || actionTask.isCancelled())
+		{
+			return false;
+		}
+
+		progress = actionTask.addProgress(progress, 5.0, weight);
+		buffer.position(0);
+		boolean success = false;
+		try (Writer writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8))
+		{
+			success = DescriptorReader.getInstance().parseData(actionTask, actionTask.getWeightValue(94.0, weight), file, crypter, desc, buffer, true, writer);
+		}
+		finally
+		{
+			if (!success)
+			{
+				Files.deleteIfExists(target);
+			}
+		}
+
+		actionTask.addProgress(progress, 95.0, weight);
+		return success;
+	}
+
+	/**
+	 * Opens a structured .dat file in index mode: only the position and the id of each element are read, the elements are decoded when they are looked up.
+	 * @param structureChronicle the chronicle of the descriptors
+	 * @param file the .dat file
+	 * @return the index, or {@code null} if the file cannot be decrypted or has no structure
+	 * @throws Exception
+	 */
+	public static RecordIndex index(String structureChronicle, File file) throws Exception
+	{
+		final ByteBuffer buffer = decrypt(file, true);
+		final DatCrypter crypter = getLastDatCrypter(file);
+		if ((buffer == null) || (crypter == null) || !crypter.isUseStructure())
+		{
+			return null;
+		}
+
+		final Descriptor desc = DescriptorParser.getInstance().findDescriptorForFile(structureChronicle, file.getName().toLowerCase());
+		if (desc == null)
+		{
+			return null;
+		}
+
+		buffer.position(0);
+		return new RecordIndex(desc, buffer, file, crypter);
 	}
 
 	public static String start(ActionTask actionTask, double weight, String structureChronicle, File file, boolean mass) throws Exception
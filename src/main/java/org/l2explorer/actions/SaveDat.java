@@ -18,6 +18,7 @@ package org.l2explorer.actions;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.StringReader;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -49,6 +50,7 @@ public class SaveDat extends ActionTask
 	{
 		final long startTime = System.currentTimeMillis();
 		byte[] buff = null;
+		boolean packed = false;
 		DatCrypter crypter = null;
 		double progress = getCurrentProgress();
 		boolean shouldContinue = true;
@@ -67,7 +69,14 @@ public class SaveDat extends ActionTask
 					}
 					else
 					{
-						buff = DescriptorWriter.parseData(this, 90.0, _file, crypter, desc, _l2clientdat.getTextPaneMain().getText().replace("\n", "\r\n"), false);
+						final DatCrypter encrypter = crypter;
+						final String text = _l2clientdat.getTextPaneMain().getText();
+						packed = DatFile.write(_file.getPath(), ConfigDebug.ENCRYPT ? encrypter : null, os -> DescriptorWriter.packData(this, 90.0, _file, encrypter, desc, () -> new StringReader(text), os, false));
+						if (!packed && !isCancelled())
+						{
+							buff = DescriptorWriter.parseData(this, 90.0, _file, crypter, desc, text.replace("\n", "\r\n"), false);
+						}
+						
 						if (isCancelled())
 						{
 							shouldContinue = false;
@@ -110,31 +119,34 @@ public class SaveDat extends ActionTask
 			shouldContinue = false;
 		}
 		
-		if (shouldContinue && (buff != null))
+		if (shouldContinue && ((buff != null) || packed))
 		{
 			if (isCancelled())
 			{
 				return;
 			}
 			
-			try
+			if (!packed)
 			{
-				if (ConfigDebug.ENCRYPT)
+				try
 				{
-					DatFile.encrypt(buff, _file.getPath(), crypter);
+					if (ConfigDebug.ENCRYPT)
+					{
+						DatFile.encrypt(buff, _file.getPath(), crypter);
+					}
+					else
+					{
+						final FileOutputStream os = new FileOutputStream(_file.getPath(), false);
+						os.write(buff);
+						os.close();
+					}
 				}
-				else
+				catch (Exception e)
 				{
-					final FileOutputStream os = new FileOutputStream(_file.getPath(), false);
-					os.write(buff);
-					os.close();
+					LOGGER.log(Level.WARNING, e.getMessage(), e);
+					return;
 				}
 			}
-			catch (Exception e)
-			{
-				LOGGER.log(Level.WARNING, e.getMessage(), e);
-				return;
-			}
 			
 			if (isCancelled())
 			{
@@ -18,17 +18,56 @@ package org.l2explorer.clientcryptor;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.foreign.Arena;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.zip.CRC32;
 
 import org.l2explorer.clientcryptor.crypt.DatCrypter;
+import org.l2explorer.clientcryptor.crypt.DatCrypterSession;
 import org.l2explorer.config.ConfigDebug;
 
 public class DatFile extends File
 {
+	public static final int HEADER_SIZE = 28;
+	private static final int FOOTER_SIZE = 20;
+	private static final int RSA_BLOCK_SIZE = 128;
+	private static final String HEADER_PREFIX = "Lineage2Ver";
+	
+	private static final byte[] END_BYTES =
+	{
+		0,
+		0,
+		0,
+		0,
+		0,
+		0,
+		0,
+		0,
+		0,
+		0,
+		0,
+		0,
+		0,
+		0,
+		0,
+		0,
+		0,
+		0,
+		0,
+		100
+	};
+	
 	private ByteBuffer _buff;
 	private Footer _foot;
 	
@@ -39,117 +78,214 @@ public class DatFile extends File
 	
 	public static void encrypt(byte[] buff, String file, DatCrypter crypter) throws Exception
 	{
-		crypter.aquire();
-		final FileOutputStream os = new FileOutputStream(file, false);
-		final String header = "Lineage2Ver" + crypter.getCode();
-		os.write(header.getBytes(StandardCharsets.UTF_16LE));
-		crypter.update(buff);
-		final byte[] res = crypter.encryptResult().array();
-		os.write(res);
-		if (ConfigDebug.DAT_ADD_END_BYTES)
-		{
-			final byte[] endBytes =
+		try (FileChannel channel = FileChannel.open(Path.of(file), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			final String header = "Lineage2Ver" + crypter.getCode();
+			final DatCrypterSession session = crypter.newSession();
+			session.update(buff);
+			final ByteBuffer[] parts =
 			{
-				0,
-				0,
-				0,
-				0,
-				0,
-				0,
-				0,
-				0,
-				0,
-				0,
-				0,
-				0,
-				0,
-				0,
-				0,
-				0,
-				0,
-				0,
-				0,
-				100
+				ByteBuffer.wrap(header.getBytes(StandardCharsets.UTF_16LE)),
+				session.encryptResult(),
+				ByteBuffer.wrap(ConfigDebug.DAT_ADD_END_BYTES ? END_BYTES : new byte[0])
 			};
-			os.write(endBytes);
+			
+			long remaining = 0;
+			for (ByteBuffer part : parts)
+			{
+				remaining += part.remaining();
+			}
+			while (remaining > 0)
+			{
+				remaining -= channel.write(parts);
+			}
 		}
-		os.close();
-		crypter.release();
 	}
 	
-	public ByteBuffer getBuff()
+	/**
+	 * Writes a .dat file from content produced while it is written, so it never has to be held in memory as a whole.<br>
+	 * The file is written next to its target and only moved over it once complete, a failed or refused write leaves the previous file untouched.
+	 * @param file the file to write
+	 * @param crypter the encrypter, or {@code null} to write the content as is
+	 * @param content writes the content
+	 * @return {@code false} if the content refused to be written
+	 * @throws Exception
+	 */
+	public static boolean write(String file, DatCrypter crypter, DatContent content) throws Exception
 	{
-		return _buff;
-	}
-	
-	public void decrypt(DatCrypter crypter) throws Exception
-	{
-		loadInfo();
-		try (FileInputStream fis = new FileInputStream(this))
+		final Path target = Path.of(file);
+		final Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+		boolean written = false;
+		try
 		{
-			crypter.aquire();
-			try
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
 			{
-				fis.skip(28L);
-				final byte[] buff = new byte[crypter.getChunkSize(fis.available())];
-				int len = fis.available() - crypter.getSkipSize();
-				while (len > 0)
+				if (crypter == null)
 				{
-					len -= fis.read(buff);
-					if (!crypter.update(buff))
+					final OutputStream os = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+					if (!content.write(os))
 					{
-						_buff = null;
-						return;
+						return false;
+					}
+					os.flush();
+				}
+				else
+				{
+					channel.write(ByteBuffer.wrap((HEADER_PREFIX + crypter.getCode()).getBytes(StandardCharsets.UTF_16LE)));
+					final OutputStream os = crypter.newEncryptStream(channel);
+					if (!content.write(os))
+					{
+						return false;
+					}
+					os.close();
+					
+					final ByteBuffer end = ByteBuffer.wrap(ConfigDebug.DAT_ADD_END_BYTES ? END_BYTES : new byte[0]);
+					while (end.hasRemaining())
+					{
+						channel.write(end);
 					}
 				}
-				_buff = crypter.decryptResult();
-				
 			}
-			finally
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+			written = true;
+		}
+		finally
+		{
+			if (!written)
 			{
-				crypter.release();
+				Files.deleteIfExists(temp);
 			}
 		}
-		catch (Exception e)
+		return true;
+	}
+	
+	/**
+	 * Reads the crypt code of a file from its {@code Lineage2VerXXX} header.
+	 * @param file the file to check
+	 * @return the XXX code, or -1 if the file is too small or is not encrypted
+	 * @throws IOException
+	 */
+	public static int readCryptCode(File file) throws IOException
+	{
+		try (FileInputStream fis = new FileInputStream(file))
 		{
-			throw e;
+			return parseCryptCode(fis.readNBytes(HEADER_SIZE));
 		}
 	}
 	
-	@SuppressWarnings("unused")
-	private boolean checkCrc32(DatCrypter crypter)
+	/**
+	 * Parses a {@code Lineage2VerXXX} UTF-16LE header straight from its bytes.
+	 * @param head the first bytes of the file
+	 * @return the XXX code, or -1 if {@code head} is not such a header
+	 */
+	public static int parseCryptCode(byte[] head)
 	{
-		if (_foot == null)
+		if (head.length < HEADER_SIZE)
+		{
+			return -1;
+		}
+		
+		for (int i = 0; i < HEADER_PREFIX.length(); i++)
+		{
+			if ((head[i * 2] != HEADER_PREFIX.charAt(i)) || (head[(i * 2) + 1] != 0))
+			{
+				return -1;
+			}
+		}
+		
+		int code = 0;
+		for (int i = HEADER_PREFIX.length() * 2; i < HEADER_SIZE; i += 2)
 		{
-			try
+			final int digit = head[i] - '0';
+			if ((digit < 0) || (digit > 9) || (head[i + 1] != 0))
 			{
-				loadInfo();
+				return -1;
 			}
-			catch (IOException e)
+			code = (code * 10) + digit;
+		}
+		return code;
+	}
+	
+	public ByteBuffer getBuff()
+	{
+		return _buff;
+	}
+	
+	public void decrypt(DatCrypter crypter) throws Exception
+	{
+		loadInfo();
+		if (ConfigDebug.DAT_VERIFY_CRC)
+		{
+			final Integrity integrity = verify();
+			if (!integrity.isValid())
 			{
-				return false;
+				throw new IOException("Can not read the dat file : " + integrity.getDescription());
 			}
 		}
-		try (FileInputStream fis = new FileInputStream(this))
+		
+		// The arena unmaps the body as soon as it is decrypted, so the file is not left locked until the mapping gets garbage collected.
+		try (FileChannel channel = FileChannel.open(toPath(), StandardOpenOption.READ);
+			Arena arena = Arena.ofShared())
 		{
-			final CRC32 chksum = new CRC32();
-			byte[] buff = new byte[1024];
-			int len = fis.available() - 20;
-			while (len > 0)
+			final long len = Math.max(0, channel.size() - HEADER_SIZE - crypter.getSkipSize());
+			final ByteBuffer body = channel.map(MapMode.READ_ONLY, HEADER_SIZE, len, arena).asByteBuffer();
+			if (!crypter.probe(body))
 			{
-				if (len < 1024)
-				{
-					buff = new byte[len];
-				}
-				len -= fis.read(buff);
-				chksum.update(buff);
+				_buff = null;
+				return;
+			}
+			
+			final DatCrypterSession session = crypter.newSession();
+			if (!session.update(body))
+			{
+				_buff = null;
+				return;
 			}
-			return chksum.getValue() == _foot.crc32;
+			_buff = session.decryptResult();
 		}
-		catch (Exception e2)
+		catch (Exception e)
 		{
-			e2.printStackTrace();
-			return false;
+			throw e;
+		}
+	}
+	
+	/**
+	 * Checks a Lineage2Ver41x file against its footer without decrypting it.<br>
+	 * The body size must be a whole number of RSA blocks and, when the footer holds a CRC32, it must match the CRC32 of everything before the footer, computed over a mapped view of the file.
+	 * @return the integrity state of the file
+	 * @throws IOException if the file can not be read
+	 */
+	public Integrity verify() throws IOException
+	{
+		final int code = readCryptCode(this);
+		if ((code < 411) || (code > 414))
+		{
+			return Integrity.NO_FOOTER;
+		}
+		
+		final long bodySize = length() - HEADER_SIZE - FOOTER_SIZE;
+		if ((bodySize < 0) || ((bodySize % RSA_BLOCK_SIZE) != 0))
+		{
+			return Integrity.TRUNCATED;
+		}
+		
+		if (_foot == null)
+		{
+			loadInfo();
+		}
+		
+		// Files written with DAT_ADD_END_BYTES have no checksum.
+		if (_foot.crc32 == 0)
+		{
+			return Integrity.NO_CHECKSUM;
+		}
+		
+		try (FileChannel channel = FileChannel.open(toPath(), StandardOpenOption.READ);
+			Arena arena = Arena.ofConfined())
+		{
+			final CRC32 crc = new CRC32();
+			crc.update(channel.map(MapMode.READ_ONLY, 0, channel.size() - FOOTER_SIZE, arena).asByteBuffer());
+			return (crc.getValue() == _foot.crc32) ? Integrity.OK : Integrity.BAD_CHECKSUM;
 		}
 	}
 	
@@ -216,10 +352,24 @@ public class DatFile extends File
 		crc += ((foot[13] << 8) & 0xFF00L);
 		crc += ((foot[14] << 16) & 0xFF0000L);
 		crc += ((foot[15] << 24) & 0xFF000000L);
-		_foot = new Footer(crc, min, maj);
+		_foot = new Footer(crc, maj, min);
 		fis.close();
 	}
 	
+	/**
+	 * Content of a .dat file, produced on demand by {@link DatFile#write(String, DatCrypter, DatContent)}.
+	 */
+	@FunctionalInterface
+	public interface DatContent
+	{
+		/**
+		 * @param os the destination, it must not be closed
+		 * @return {@code false} to give up, nothing is written then
+		 * @throws Exception
+		 */
+		boolean write(OutputStream os) throws Exception;
+	}
+	
 	private static class Footer
 	{
 		long crc32;
@@ -235,4 +385,32 @@ public class DatFile extends File
 			minorVersion = min;
 		}
 	}
+	
+	public enum Integrity
+	{
+		OK(true, "checksum ok"),
+		NO_CHECKSUM(true, "no checksum in footer"),
+		NO_FOOTER(true, "no footer for this version"),
+		TRUNCATED(false, "truncated"),
+		BAD_CHECKSUM(false, "checksum mismatch");
+		
+		private final boolean _valid;
+		private final String _description;
+		
+		Integrity(boolean valid, String description)
+		{
+			_valid = valid;
+			_description = description;
+		}
+		
+		public boolean isValid()
+		{
+			return _valid;
+		}
+		
+		public String getDescription()
+		{
+			return _description;
+		}
+	}
 }
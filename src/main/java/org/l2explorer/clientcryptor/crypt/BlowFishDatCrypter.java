@@ -17,37 +17,31 @@
 package org.l2explorer.clientcryptor.crypt;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.ShortBufferException;
 
 public class BlowFishDatCrypter extends DatCrypter
 {
-	private boolean _encrypt;
+	private final boolean _encrypt;
 	private final BlowfishEngine _blowfish;
 	
 	public BlowFishDatCrypter(String name, int code, String key, boolean deCrypt)
 	{
 		super(name, code);
-		_encrypt = false;
-		_blowfish = new BlowfishEngine();
-		_encrypt = !deCrypt;
-		_blowfish.init(_encrypt, key.getBytes());
-	}
-	
-	@Override
-	public ByteBuffer decryptResult()
-	{
-		return null;
-	}
-	
-	@Override
-	public ByteBuffer encryptResult()
-	{
-		return null;
+		final boolean encrypt = !deCrypt;
+		final BlowfishEngine blowfish = new BlowfishEngine();
+		// The client keys are C strings, cryptVersion.xml writes their terminating NUL as a literal \0.
+		blowfish.init(encrypt, key.replace("\\0", "\0").getBytes());
+		_encrypt = encrypt;
+		_blowfish = blowfish;
 	}
 	
 	@Override
-	public boolean update(byte[] b)
+	public DatCrypterSession newSession()
 	{
-		return true;
+		return new Session();
 	}
 	
 	@Override
@@ -67,4 +61,64 @@ public class BlowFishDatCrypter extends DatCrypter
 	{
 		return _encrypt;
 	}
+	
+	private class Session extends DatCrypterSession
+	{
+		private byte[] _result = new byte[0];
+		private int _size;
+		
+		Session()
+		{
+			super(BlowFishDatCrypter.this);
+		}
+		
+		@Override
+		public ByteBuffer decryptResult()
+		{
+			return process();
+		}
+		
+		@Override
+		public ByteBuffer encryptResult()
+		{
+			return process();
+		}
+		
+		@Override
+		public boolean update(byte[] b)
+		{
+			return update(ByteBuffer.wrap(b));
+		}
+		
+		@Override
+		public boolean update(ByteBuffer data)
+		{
+			final int length = data.remaining();
+			if (_result.length < (_size + length))
+			{
+				_result = Arrays.copyOf(_result, Math.max(_size + length, _result.length * 2));
+			}
+			data.get(_result, _size, length);
+			_size += length;
+			return true;
+		}
+		
+		/**
+		 * Runs the collected data through the engine in place. The ECB blocks cover the whole data, the last {@code size % 8} bytes are kept as they are.
+		 * @return the processed data
+		 */
+		private ByteBuffer process()
+		{
+			final byte[] result = (_result.length == _size) ? _result : Arrays.copyOf(_result, _size);
+			try
+			{
+				_blowfish.processBlocks(result, 0, result.length, result, 0);
+			}
+			catch (IllegalBlockSizeException | ShortBufferException e)
+			{
+				throw new IllegalStateException(e);
+			}
+			return ByteBuffer.wrap(result);
+		}
+	}
 }
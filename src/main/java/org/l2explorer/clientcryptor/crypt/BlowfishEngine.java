@@ -1132,6 +1132,50 @@ public class BlowfishEngine
 		return BLOCK_SIZE;
 	}
 	
+	/**
+	 * Processes all the complete blocks of {@code in[inOff, inOff + length)} in a single call, bounds and key are checked once for the whole range instead of once per block.<br>
+	 * {@code in} and {@code out} may be the same array with the same offset to work in place. The trailing {@code length % 8} bytes are not touched.
+	 * @param in the input bytes
+	 * @param inOff the first input byte
+	 * @param length the amount of input bytes
+	 * @param out the output bytes
+	 * @param outOff the first output byte
+	 * @return the amount of bytes processed, {@code length} rounded down to a multiple of 8
+	 * @throws IllegalBlockSizeException
+	 * @throws ShortBufferException
+	 */
+	public final int processBlocks(byte[] in, int inOff, int length, byte[] out, int outOff) throws IllegalBlockSizeException, ShortBufferException
+	{
+		if (workingKey == null)
+		{
+			throw new IllegalStateException("Blowfish not initialised");
+		}
+		final int size = length - (length % BLOCK_SIZE);
+		if ((inOff + size) > in.length)
+		{
+			throw new IllegalBlockSizeException("input buffer too short");
+		}
+		if ((outOff + size) > out.length)
+		{
+			throw new ShortBufferException("output buffer too short");
+		}
+		if (encrypting)
+		{
+			for (int i = 0; i < size; i += BLOCK_SIZE)
+			{
+				encryptBlock(in, inOff + i, out, outOff + i);
+			}
+		}
+		else
+		{
+			for (int i = 0; i < size; i += BLOCK_SIZE)
+			{
+				decryptBlock(in, inOff + i, out, outOff + i);
+			}
+		}
+		return size;
+	}
+	
 	private int F(int x)
 	{
 		return ((S0[x >>> 24] + S1[(x >>> 16) & 0xFF]) ^ S2[(x >>> 8) & 0xFF]) + S3[x & 0xFF];
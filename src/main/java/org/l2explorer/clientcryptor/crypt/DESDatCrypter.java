@@ -16,8 +16,8 @@
  */
 package org.l2explorer.clientcryptor.crypt;
 
-import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
@@ -27,8 +27,8 @@ import javax.crypto.spec.DESKeySpec;
 public class DESDatCrypter extends DatCrypter
 {
 	private final boolean _encrypt;
-	private ByteArrayOutputStream _result;
-	private Cipher _cipher;
+	private final ThreadLocal<Cipher> _threadCipher = ThreadLocal.withInitial(this::createCipher);
+	private final SecretKey _key;
 	
 	public DESDatCrypter(String name, int code, String sKey, boolean deCrypt) throws Exception
 	{
@@ -42,38 +42,14 @@ public class DESDatCrypter extends DatCrypter
 		}
 		final DESKeySpec dks = new DESKeySpec(keyXor);
 		final SecretKeyFactory skf = SecretKeyFactory.getInstance("DES");
-		final SecretKey desKey = skf.generateSecret(dks);
-		(_cipher = Cipher.getInstance("DES/ECB/NoPadding")).init(deCrypt ? 2 : 1, desKey);
+		_key = skf.generateSecret(dks);
+		_threadCipher.get();
 	}
 	
 	@Override
-	public ByteBuffer decryptResult()
+	public DatCrypterSession newSession()
 	{
-		return ByteBuffer.wrap(_result.toByteArray());
-	}
-	
-	@Override
-	public ByteBuffer encryptResult()
-	{
-		return ByteBuffer.wrap(_result.toByteArray());
-	}
-	
-	@Override
-	public boolean update(byte[] bArray) throws Exception
-	{
-		if (!_encrypt)
-		{
-			_result = new ByteArrayOutputStream(bArray.length);
-			final byte[] bytes = new byte[8];
-			int size;
-			for (int position = 0; position < bArray.length; position += size)
-			{
-				size = Math.min(8, bArray.length - position);
-				System.arraycopy(bArray, position, bytes, 0, size);
-				_result.write((size == 8) ? _cipher.doFinal(bytes) : bytes, 0, size);
-			}
-		}
-		return true;
+		return new Session();
 	}
 	
 	@Override
@@ -93,4 +69,65 @@ public class DESDatCrypter extends DatCrypter
 	{
 		return _encrypt;
 	}
+	
+	private Cipher createCipher()
+	{
+		try
+		{
+			final Cipher cipher = Cipher.getInstance("DES/ECB/NoPadding");
+			cipher.init(_encrypt ? 1 : 2, _key);
+			return cipher;
+		}
+		catch (Exception e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	private class Session extends DatCrypterSession
+	{
+		private byte[] _result = new byte[0];
+		
+		Session()
+		{
+			super(DESDatCrypter.this);
+		}
+		
+		@Override
+		public ByteBuffer decryptResult()
+		{
+			return ByteBuffer.wrap(_result);
+		}
+		
+		@Override
+		public ByteBuffer encryptResult()
+		{
+			return ByteBuffer.wrap(_result);
+		}
+		
+		@Override
+		public boolean update(byte[] bArray) throws Exception
+		{
+			return update(ByteBuffer.wrap(bArray));
+		}
+		
+		/**
+		 * Runs all the complete 8 bytes blocks of {@code data} through the cipher with one call, straight into the presized result. The last {@code remaining % 8} bytes are copied as they are.
+		 */
+		@Override
+		public boolean update(ByteBuffer data) throws Exception
+		{
+			final int length = data.remaining();
+			final int aligned = length - (length % 8);
+			final int offset = _result.length;
+			_result = Arrays.copyOf(_result, offset + length);
+			
+			final ByteBuffer input = data.duplicate();
+			input.limit(input.position() + aligned);
+			_threadCipher.get().doFinal(input, ByteBuffer.wrap(_result, offset, aligned));
+			data.position(data.position() + aligned);
+			data.get(_result, offset + aligned, length - aligned);
+			return true;
+		}
+	}
 }
@@ -16,11 +16,14 @@
  */
 package org.l2explorer.clientcryptor.crypt;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.locks.ReentrantLock;
 
 public abstract class DatCrypter
 {
@@ -28,7 +31,6 @@ public abstract class DatCrypter
 	private final int _code;
 	private boolean _useStructure;
 	private final List<String> _fileEndNames = new ArrayList<>();
-	private final ReentrantLock _lock = new ReentrantLock(true);
 	
 	public DatCrypter(String name, int code)
 	{
@@ -36,30 +38,71 @@ public abstract class DatCrypter
 		_code = code;
 	}
 	
-	public abstract boolean update(byte[] p0) throws Exception;
-	
-	public abstract ByteBuffer decryptResult();
-	
-	public abstract ByteBuffer encryptResult();
-	
-	public abstract int getChunkSize(int p0);
-	
-	public abstract int getSkipSize();
-	
-	public boolean checkAquired()
+	/**
+	 * Starts a new encrypt or decrypt operation with this key.<br>
+	 * The crypter itself only holds the key and its settings, every operation gets its own session so the same key can be used by many threads at once.
+	 * @return a new single-threaded session
+	 */
+	public abstract DatCrypterSession newSession();
+	
+	/**
+	 * Opens a stream encrypting what is written to it into {@code channel}, from its current position. Once the stream is closed the channel is positioned after the encrypted data.<br>
+	 * The default implementation keeps the whole content and encrypts it with one {@link #newSession() session} on close, crypters able to encrypt on the fly override it.
+	 * @param channel the destination, it is not closed with the stream
+	 * @return the new stream
+	 * @throws IOException
+	 */
+	public OutputStream newEncryptStream(FileChannel channel) throws IOException
 	{
-		return _lock.isHeldByCurrentThread();
+		return new ByteArrayOutputStream()
+		{
+			private boolean _closed;
+			
+			@Override
+			public void close() throws IOException
+			{
+				if (_closed)
+				{
+					return;
+				}
+				
+				_closed = true;
+				final DatCrypterSession session = newSession();
+				try
+				{
+					session.update(toByteArray());
+				}
+				catch (IOException e)
+				{
+					throw e;
+				}
+				catch (Exception e)
+				{
+					throw new IOException(e);
+				}
+				
+				final ByteBuffer result = session.encryptResult();
+				while (result.hasRemaining())
+				{
+					channel.write(result);
+				}
+			}
+		};
 	}
 	
-	public void aquire()
+	/**
+	 * Cheap check done before a full decrypt, to reject a key that obviously does not match the file.
+	 * @param body the file body, its position is not changed
+	 * @return {@code false} if this key can not decrypt {@code body}
+	 */
+	public boolean probe(ByteBuffer body)
 	{
-		_lock.lock();
+		return true;
 	}
 	
-	public void release()
-	{
-		_lock.unlock();
-	}
+	public abstract int getChunkSize(int p0);
+	
+	public abstract int getSkipSize();
 	
 	public abstract boolean isEncrypt();
 	
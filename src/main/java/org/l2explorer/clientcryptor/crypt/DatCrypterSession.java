@@ -0,0 +1,70 @@
+/*
+ * This file is part of the L2ExplorerDat project.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.l2explorer.clientcryptor.crypt;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * One encrypt or decrypt operation of a {@link DatCrypter}.<br>
+ * A session holds all the state of the operation, it must be used by a single thread and thrown away once its result is taken. Sessions of the same crypter are independent and can run concurrently.
+ */
+public abstract class DatCrypterSession
+{
+	private final DatCrypter _crypter;
+	
+	protected DatCrypterSession(DatCrypter crypter)
+	{
+		_crypter = crypter;
+	}
+	
+	public abstract boolean update(byte[] p0) throws Exception;
+	
+	/**
+	 * Feeds the whole remaining content of {@code data} to the session.<br>
+	 * The default implementation slices it into {@link DatCrypter#getChunkSize(int)} pieces for {@link #update(byte[])}, sessions able to work on the full buffer at once should override it.
+	 * @param data the file body, without header and footer
+	 * @return {@code false} if the data cannot be handled by this crypter
+	 * @throws Exception
+	 */
+	public boolean update(ByteBuffer data) throws Exception
+	{
+		final byte[] chunk = new byte[_crypter.getChunkSize(data.remaining())];
+		while (data.hasRemaining())
+		{
+			data.get(chunk, 0, Math.min(chunk.length, data.remaining()));
+			if (!update(chunk))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @return the decrypted content
+	 * @throws IOException if the decrypted data is not valid (for example a compressed payload that does not match its declared size)
+	 */
+	public abstract ByteBuffer decryptResult() throws IOException;
+	
+	public abstract ByteBuffer encryptResult();
+	
+	public DatCrypter getCrypter()
+	{
+		return _crypter;
+	}
+}
@@ -16,204 +16,671 @@
  */
 package org.l2explorer.clientcryptor.crypt;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.Key;
 import java.security.KeyFactory;
 import java.security.interfaces.RSAPrivateKey;
 import java.security.interfaces.RSAPublicKey;
 import java.security.spec.RSAPrivateKeySpec;
 import java.security.spec.RSAPublicKeySpec;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.Inflater;
-import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
 
 import javax.crypto.Cipher;
 
+import org.l2explorer.clientcryptor.exceptions.InflateSizeException;
 import org.l2explorer.util.DebugUtil;
-import org.l2explorer.util.Util;
+import org.l2explorer.util.ThreadPool;
 
 public class RSADatCrypter extends DatCrypter
 {
 	private static final Logger LOGGER = Logger.getLogger(RSADatCrypter.class.getName());
 	
-	private Cipher _cipher;
-	private ByteArrayOutputStream _result;
-	private boolean _encrypt;
+	private static final int BLOCK_SIZE = 128;
+	private static final int BLOCK_DATA_SIZE = 124;
+	private static final int DEFLATE_CHUNK_SIZE = 1024 * 1024;
+	private static final int DEFLATE_DICTIONARY_SIZE = 32 * 1024;
+	// Below this amount of blocks per worker the task overhead costs more than the RSA work itself.
+	private static final int MIN_RANGE_BLOCKS = 256;
+	private static final long MAX_DEFLATE_RATIO = 1032;
+	private static final int STREAM_BLOCKS = 4096;
+	
+	private final ThreadLocal<Cipher> _threadCipher = ThreadLocal.withInitial(this::createCipher);
+	private final Key _key;
+	private final int _mode;
+	private final boolean _encrypt;
 	
 	public RSADatCrypter(String name, int code, String modulus, String exp, boolean deCrypt)
 	{
 		super(name, code);
-		_encrypt = false;
+		Key key = null;
+		int mode = 0;
 		try
 		{
-			_cipher = Cipher.getInstance("RSA/ECB/nopadding");
 			if (deCrypt)
 			{
 				final RSAPublicKeySpec keyspec = new RSAPublicKeySpec(new BigInteger(modulus, 16), new BigInteger(exp, 16));
-				final RSAPublicKey rsaKey = (RSAPublicKey) KeyFactory.getInstance("RSA").generatePublic(keyspec);
-				_cipher.init(2, rsaKey);
+				key = (RSAPublicKey) KeyFactory.getInstance("RSA").generatePublic(keyspec);
+				mode = 2;
 			}
 			else
 			{
-				_encrypt = true;
 				final RSAPrivateKeySpec keyspec2 = new RSAPrivateKeySpec(new BigInteger(modulus, 16), new BigInteger(exp, 16));
-				final RSAPrivateKey rsaKey2 = (RSAPrivateKey) KeyFactory.getInstance("RSA").generatePrivate(keyspec2);
-				_cipher.init(1, rsaKey2);
+				key = (RSAPrivateKey) KeyFactory.getInstance("RSA").generatePrivate(keyspec2);
+				mode = 1;
 			}
 		}
 		catch (Exception e)
 		{
 			LOGGER.log(Level.WARNING, e.getMessage(), e);
 		}
+		// Final fields: the sessions read the key from any worker thread.
+		_key = key;
+		_mode = mode;
+		_encrypt = !deCrypt;
 	}
 	
-	@Override
-	public ByteBuffer decryptResult()
+	private static void encryptRange(Cipher cipher, byte[] data, int from, int to, byte[] result) throws Exception
 	{
-		if (!checkAquired())
+		final byte[] block = new byte[BLOCK_SIZE];
+		for (int i = from; i < to; i++)
+		{
+			final int start = i * BLOCK_DATA_SIZE;
+			final int len = Math.min(BLOCK_DATA_SIZE, data.length - start);
+			Arrays.fill(block, (byte) 0);
+			block[0] = (byte) ((len >> 24) & 0xFF);
+			block[1] = (byte) ((len >> 16) & 0xFF);
+			block[2] = (byte) ((len >> 8) & 0xFF);
+			block[3] = (byte) (len & 0xFF);
+			System.arraycopy(data, start, block, BLOCK_SIZE - len - ((BLOCK_DATA_SIZE - len) % 4), len);
+			cipher.doFinal(block, 0, BLOCK_SIZE, result, i * BLOCK_SIZE);
+		}
+	}
+	
+	/**
+	 * Encrypts the blocks {@code [from, to)} of {@code data}, each one at its own place in {@code result}.<br>
+	 * Large ranges are split on the {@link ThreadPool} with one {@link Cipher} per worker thread.
+	 * @param data the payload
+	 * @param from the first block
+	 * @param to the end block, exclusive
+	 * @param result the encrypted blocks, block {@code i} at {@code i * 128}
+	 * @throws Exception
+	 */
+	private void encryptBlocks(byte[] data, int from, int to, byte[] result) throws Exception
+	{
+		final int blocks = to - from;
+		final int ranges = Math.min(ThreadPool.getInstance().getCryptThreads(), blocks / MIN_RANGE_BLOCKS);
+		if (ranges <= 1)
+		{
+			encryptRange(_threadCipher.get(), data, from, to, result);
+			return;
+		}
+		
+		// Every block has a fixed place in the output, so the ranges can be written concurrently without any joining step.
+		final int rangeBlocks = (blocks + ranges - 1) / ranges;
+		final List<Callable<Void>> tasks = new ArrayList<>(ranges);
+		for (int first = from; first < to; first += rangeBlocks)
+		{
+			final int rangeFrom = first;
+			final int rangeTo = Math.min(to, first + rangeBlocks);
+			tasks.add(() ->
+			{
+				encryptRange(_threadCipher.get(), data, rangeFrom, rangeTo, result);
+				return null;
+			});
+		}
+		ThreadPool.getInstance().invokeAll(tasks);
+		DebugUtil.debug("Encrypted " + blocks + " blocks in " + tasks.size() + " ranges");
+	}
+	
+	/**
+	 * Compresses {@code data} into a single zlib stream.<br>
+	 * Large inputs are cut in chunks deflated on the {@link ThreadPool}, each chunk primed with the last 32KB before it as dictionary and ended by a sync flush, so the joined raw blocks plus the zlib header and the Adler-32 of the whole input still form one standard stream.
+	 * @param data the data to compress
+	 * @return the zlib stream
+	 * @throws Exception
+	 */
+	private static byte[] deflate(byte[] data) throws Exception
+	{
+		final int chunks = (data.length + DEFLATE_CHUNK_SIZE - 1) / DEFLATE_CHUNK_SIZE;
+		if ((chunks <= 1) || (ThreadPool.getInstance().getCryptThreads() <= 1))
+		{
+			final ByteArrayOutputStream s = new ByteArrayOutputStream(data.length);
+			final DeflaterOutputStream dos = new DeflaterOutputStream(s, new Deflater());
+			dos.write(data);
+			dos.finish();
+			dos.close();
+			return s.toByteArray();
+		}
+		
+		final List<Callable<byte[]>> tasks = new ArrayList<>(chunks);
+		for (int i = 0; i < chunks; i++)
+		{
+			final int from = i * DEFLATE_CHUNK_SIZE;
+			final int to = Math.min(data.length, from + DEFLATE_CHUNK_SIZE);
+			tasks.add(() -> deflateChunk(data, from, to));
+		}
+		
+		final ByteArrayOutputStream s = new ByteArrayOutputStream(data.length);
+		s.write(0x78);
+		s.write(0x9C);
+		for (byte[] chunk : ThreadPool.getInstance().invokeAll(tasks))
 		{
-			throw new IllegalStateException("Do not even think about using a DatCrypter that you did not aquired");
+			s.write(chunk);
 		}
 		
-		final byte[] compressed = _result.toByteArray();
-		int inflatedSize = compressed[0] & 0xFF;
-		inflatedSize += ((compressed[1] << 8) & 0xFF00);
-		inflatedSize += ((compressed[2] << 16) & 0xFF0000);
-		inflatedSize += ((compressed[3] << 24) & 0xFF000000);
-		final ByteArrayInputStream bais = new ByteArrayInputStream(compressed, 4, compressed.length - 4);
-		final InflaterInputStream iis = new InflaterInputStream(bais, new Inflater());
-		final ByteArrayOutputStream baos = new ByteArrayOutputStream(128);
-		final byte[] inflatedResult = new byte[128];
+		final Adler32 adler = new Adler32();
+		adler.update(data);
+		final long checksum = adler.getValue();
+		s.write((int) ((checksum >> 24) & 0xFF));
+		s.write((int) ((checksum >> 16) & 0xFF));
+		s.write((int) ((checksum >> 8) & 0xFF));
+		s.write((int) (checksum & 0xFF));
+		DebugUtil.debug("Deflated " + data.length + " bytes in " + chunks + " chunks");
+		return s.toByteArray();
+	}
+	
+	private static byte[] deflateChunk(byte[] data, int from, int to)
+	{
+		final boolean last = to == data.length;
+		final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
 		try
 		{
-			int len;
-			while ((len = iis.read(inflatedResult)) > 0)
+			if (from > 0)
+			{
+				final int dictionary = Math.min(from, DEFLATE_DICTIONARY_SIZE);
+				deflater.setDictionary(data, from - dictionary, dictionary);
+			}
+			deflater.setInput(data, from, to - from);
+			if (last)
 			{
-				baos.write(inflatedResult, 0, len);
+				deflater.finish();
 			}
+			
+			final ByteArrayOutputStream s = new ByteArrayOutputStream((to - from) / 2);
+			final byte[] buffer = new byte[BLOCK_SIZE * 512];
+			while (true)
+			{
+				final int len = deflater.deflate(buffer, 0, buffer.length, last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+				s.write(buffer, 0, len);
+				if (last ? deflater.finished() : (len < buffer.length))
+				{
+					break;
+				}
+			}
+			return s.toByteArray();
 		}
-		catch (IOException e)
+		finally
 		{
-			LOGGER.log(Level.WARNING, e.getMessage(), e);
+			deflater.end();
+		}
+	}
+	
+	/**
+	 * Decrypts {@code blocks} RSA blocks starting at the current position of {@code data}.<br>
+	 * Large inputs are split in contiguous block ranges decrypted on the {@link ThreadPool} with one {@link Cipher} per worker thread, each range is compacted in place and the ranges are then joined in file order.
+	 * @param data the encrypted blocks
+	 * @param blocks the amount of blocks to decrypt
+	 * @param out the destination, at least {@code outOffset + blocks * 128} bytes long
+	 * @param outOffset the position in {@code out} where the payload starts
+	 * @return the payload length written at {@code outOffset}, or -1 if a block is not valid for this key
+	 * @throws Exception
+	 */
+	private int decryptBlocks(ByteBuffer data, int blocks, byte[] out, int outOffset) throws Exception
+	{
+		final int ranges = Math.min(ThreadPool.getInstance().getCryptThreads(), blocks / MIN_RANGE_BLOCKS);
+		if (ranges <= 1)
+		{
+			return decryptRange(_threadCipher.get(), data, 0, blocks, out, outOffset);
 		}
 		
-		if (baos.size() != inflatedSize)
+		final int rangeBlocks = (blocks + ranges - 1) / ranges;
+		final List<Callable<Integer>> tasks = new ArrayList<>(ranges);
+		for (int first = 0; first < blocks; first += rangeBlocks)
 		{
-			LOGGER.log(Level.WARNING, ("[RSADatCrypter] Hum inflated result does not have the expected length..(" + baos.size() + "!=" + inflatedSize + ")"));
+			final int from = first;
+			final int to = Math.min(blocks, first + rangeBlocks);
+			tasks.add(() -> decryptRange(_threadCipher.get(), data, from, to, out, outOffset));
+		}
+		
+		int size = 0;
+		final List<Integer> rangeSizes = ThreadPool.getInstance().invokeAll(tasks);
+		for (int i = 0; i < rangeSizes.size(); i++)
+		{
+			final int rangeSize = rangeSizes.get(i);
+			if (rangeSize < 0)
+			{
+				return -1;
+			}
+			
+			System.arraycopy(out, outOffset + (i * rangeBlocks * BLOCK_SIZE), out, outOffset + size, rangeSize);
+			size += rangeSize;
 		}
 		
-		return ByteBuffer.wrap(baos.toByteArray());
+		DebugUtil.debug("Decrypted " + blocks + " blocks in " + tasks.size() + " ranges, payload size: " + size);
+		return size;
 	}
 	
+	private static int decryptRange(Cipher cipher, ByteBuffer data, int from, int to, byte[] out, int outOffset) throws Exception
+	{
+		final ByteBuffer input = data.duplicate();
+		final ByteBuffer output = ByteBuffer.wrap(out);
+		final int base = data.position();
+		final int first = outOffset + (from * BLOCK_SIZE);
+		int offset = first;
+		for (int block = from; block < to; block++)
+		{
+			final int start = base + (block * BLOCK_SIZE);
+			input.limit(start + BLOCK_SIZE).position(start);
+			output.limit(offset + BLOCK_SIZE).position(offset);
+			cipher.doFinal(input, output);
+			
+			int size = out[offset + 3];
+			size += ((out[offset + 2] << 8) & 0xFF00);
+			size += ((out[offset + 1] << 16) & 0xFF0000);
+			size += ((out[offset] << 24) & 0xFF000000);
+			if ((size < 0) || (size > BLOCK_SIZE))
+			{
+				return -1;
+			}
+			
+			final int pad = (-size & 0x1) + (-size & 0x2);
+			System.arraycopy(out, (offset + BLOCK_SIZE) - size - pad, out, offset, size);
+			offset += size;
+		}
+		return offset - first;
+	}
+	
+	private Cipher createCipher()
+	{
+		try
+		{
+			final Cipher cipher = Cipher.getInstance("RSA/ECB/nopadding");
+			cipher.init(_mode, _key);
+			return cipher;
+		}
+		catch (Exception e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * Decrypts the first block only and checks that it holds a plausible payload size followed by the inflated size and a zlib stream header.
+	 */
 	@Override
-	public ByteBuffer encryptResult()
+	public boolean probe(ByteBuffer body)
 	{
-		if (!checkAquired())
+		if (_encrypt || (body.remaining() < BLOCK_SIZE))
 		{
-			throw new IllegalStateException("Do not even think about using a DatCrypter that you did not aquired");
+			return true;
 		}
 		
-		final ByteArrayOutputStream result = new ByteArrayOutputStream();
+		final byte[] block = new byte[BLOCK_SIZE];
 		try
 		{
-			final ByteArrayInputStream input = new ByteArrayInputStream(_result.toByteArray());
-			final byte[] buffer = new byte[124];
-			final byte[] block = new byte[128];
-			int len;
-			while ((len = input.read(buffer)) > 0)
-			{
-				Arrays.fill(block, (byte) 0);
-				block[0] = (byte) ((len >> 24) & 0xFF);
-				block[1] = (byte) ((len >> 16) & 0xFF);
-				block[2] = (byte) ((len >> 8) & 0xFF);
-				block[3] = (byte) (len & 0xFF);
-				System.arraycopy(buffer, 0, block, 128 - len - ((124 - len) % 4), len);
-				result.write(_cipher.doFinal(block));
-			}
+			final ByteBuffer input = body.duplicate();
+			input.limit(input.position() + BLOCK_SIZE);
+			_threadCipher.get().doFinal(input, ByteBuffer.wrap(block));
 		}
 		catch (Exception e)
 		{
-			LOGGER.log(Level.WARNING, e.getMessage(), e);
+			return false;
+		}
+		
+		int size = block[3];
+		size += ((block[2] << 8) & 0xFF00);
+		size += ((block[1] << 16) & 0xFF0000);
+		size += ((block[0] << 24) & 0xFF000000);
+		if ((size < 0) || (size > BLOCK_DATA_SIZE))
+		{
+			return false;
+		}
+		if (size < 6)
+		{
+			return true;
 		}
 		
-		return ByteBuffer.wrap(result.toByteArray());
+		// Payload starts with the 4 bytes inflated size, then CMF/FLG: deflate method and a header multiple of 31.
+		final int pad = (-size & 0x1) + (-size & 0x2);
+		final int start = BLOCK_SIZE - size - pad;
+		final int cmf = block[start + 4] & 0xFF;
+		final int flg = block[start + 5] & 0xFF;
+		return ((cmf & 0x0F) == 8) && ((((cmf << 8) | flg) % 31) == 0);
 	}
 	
 	@Override
-	public boolean update(byte[] b) throws Exception
+	public DatCrypterSession newSession()
 	{
-		if (!checkAquired())
+		return new Session();
+	}
+	
+	@Override
+	public OutputStream newEncryptStream(FileChannel channel) throws IOException
+	{
+		return _encrypt ? new EncryptStream(channel) : super.newEncryptStream(channel);
+	}
+	
+	/**
+	 * Deflates and encrypts the content while it is written, {@link #STREAM_BLOCKS} blocks at a time.<br>
+	 * The first block starts with the inflated size, only known at the end: it is kept aside and written last, at its place before the others.
+	 */
+	private class EncryptStream extends OutputStream
+	{
+		private final FileChannel _channel;
+		private final long _start;
+		private final Deflater _deflater = new Deflater();
+		private final byte[] _payload = new byte[STREAM_BLOCKS * BLOCK_DATA_SIZE];
+		private final byte[] _blocks = new byte[STREAM_BLOCKS * BLOCK_SIZE];
+		private int _payloadSize = 4;
+		private byte[] _first;
+		private long _blockCount;
+		private long _inflatedSize;
+		private boolean _closed;
+		
+		EncryptStream(FileChannel channel) throws IOException
 		{
-			throw new IllegalStateException("Do not even think about using a DatCrypter that you did not aquired");
+			_channel = channel;
+			_start = channel.position();
 		}
 		
-		Exception exception = null;
-		try
+		@Override
+		public void write(int b) throws IOException
+		{
+			write(new byte[]
+			{
+				(byte) b
+			}, 0, 1);
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
 		{
-			if (!_encrypt)
+			if (len == 0)
 			{
-				final byte[] chunk = _cipher.doFinal(b);
-				int size = chunk[3];
-				size += ((chunk[2] << 8) & 0xFF00);
-				size += ((chunk[1] << 16) & 0xFF0000);
-				size += ((chunk[0] << 24) & 0xFF000000);
-				final int pad = (-size & 0x1) + (-size & 0x2);
-				DebugUtil.debug("Size:" + size + " pad:" + pad);
-				if (size > 128)
+				return;
+			}
+			
+			_inflatedSize += len;
+			_deflater.setInput(b, off, len);
+			while (!_deflater.needsInput())
+			{
+				deflate();
+			}
+		}
+		
+		private void deflate() throws IOException
+		{
+			_payloadSize += _deflater.deflate(_payload, _payloadSize, _payload.length - _payloadSize);
+			if (_payloadSize == _payload.length)
+			{
+				writeBlocks(_payload);
+			}
+		}
+		
+		/**
+		 * @param data the payload to encrypt, its last block may be partial
+		 */
+		private void writeBlocks(byte[] data) throws IOException
+		{
+			final int blocks = (data.length + BLOCK_DATA_SIZE - 1) / BLOCK_DATA_SIZE;
+			int from = 0;
+			if (_first == null)
+			{
+				_first = Arrays.copyOf(data, Math.min(BLOCK_DATA_SIZE, data.length));
+				from = 1;
+			}
+			
+			encrypt(data, from, blocks);
+			write(ByteBuffer.wrap(_blocks, from * BLOCK_SIZE, (blocks - from) * BLOCK_SIZE), _start + ((_blockCount + from) * BLOCK_SIZE));
+			_blockCount += blocks;
+			_payloadSize = 0;
+		}
+		
+		private void encrypt(byte[] data, int from, int to) throws IOException
+		{
+			try
+			{
+				encryptBlocks(data, from, to, _blocks);
+			}
+			catch (IOException e)
+			{
+				throw e;
+			}
+			catch (Exception e)
+			{
+				throw new IOException(e);
+			}
+		}
+		
+		private void write(ByteBuffer buffer, long position) throws IOException
+		{
+			while (buffer.hasRemaining())
+			{
+				position += _channel.write(buffer, position);
+			}
+		}
+		
+		@Override
+		public void close() throws IOException
+		{
+			if (_closed)
+			{
+				return;
+			}
+			
+			_closed = true;
+			try
+			{
+				_deflater.finish();
+				while (!_deflater.finished())
+				{
+					deflate();
+				}
+				if ((_payloadSize > 0) || (_first == null))
 				{
-					return false;
+					writeBlocks(Arrays.copyOf(_payload, _payloadSize));
 				}
 				
-				_result.write(chunk, 128 - size - pad, size);
-				DebugUtil.debug("--- BLOCK:\n" + Util.printData(chunk) + "-----");
+				if (_inflatedSize > Integer.MAX_VALUE)
+				{
+					throw new IOException("Content too big for a dat file: " + _inflatedSize + " bytes");
+				}
+				
+				final int l = (int) _inflatedSize;
+				_first[0] = (byte) (l & 0xFF);
+				_first[1] = (byte) ((l & 0xFF00) >> 8);
+				_first[2] = (byte) ((l & 0xFF0000) >> 16);
+				_first[3] = (byte) ((l & 0xFF000000) >> 24);
+				encrypt(_first, 0, 1);
+				write(ByteBuffer.wrap(_blocks, 0, BLOCK_SIZE), _start);
+				_channel.position(_start + (_blockCount * BLOCK_SIZE));
 			}
-			else
+			finally
 			{
-				try
+				_deflater.end();
+			}
+		}
+	}
+	
+	private class Session extends DatCrypterSession
+	{
+		private ByteArrayOutputStream _result = new ByteArrayOutputStream(128);
+		private byte[] _decrypted;
+		private int _decryptedSize;
+		
+		Session()
+		{
+			super(RSADatCrypter.this);
+		}
+		
+		@Override
+		public ByteBuffer decryptResult() throws IOException
+		{
+			final byte[] compressed = _decrypted;
+			int inflatedSize = compressed[0] & 0xFF;
+			inflatedSize += ((compressed[1] << 8) & 0xFF00);
+			inflatedSize += ((compressed[2] << 16) & 0xFF0000);
+			inflatedSize += ((compressed[3] << 24) & 0xFF000000);
+			
+			// Deflate can not compress better than 1032:1, anything above comes from a broken header and must not be allocated.
+			final int compressedSize = _decryptedSize - 4;
+			if ((inflatedSize < 0) || (inflatedSize > (compressedSize * MAX_DEFLATE_RATIO)))
+			{
+				throw new InflateSizeException(inflatedSize, -1);
+			}
+			
+			final byte[] inflated = new byte[inflatedSize];
+			final Inflater inflater = new Inflater();
+			try
+			{
+				inflater.setInput(compressed, 4, compressedSize);
+				int size = 0;
+				while ((size < inflatedSize) && !inflater.finished())
 				{
-					final ByteArrayOutputStream s = new ByteArrayOutputStream(b.length);
-					final DeflaterOutputStream dos = new DeflaterOutputStream(s, new Deflater());
-					dos.write(b);
-					dos.finish();
-					dos.close();
-					final int l = b.length;
-					(_result = new ByteArrayOutputStream(10 + s.toByteArray().length)).write(l & 0xFF);
-					_result.write((l & 0xFF00) >> 8);
-					_result.write((l & 0xFF0000) >> 16);
-					_result.write((l & 0xFF000000) >> 24);
-					_result.write(s.toByteArray());
+					final int len = inflater.inflate(inflated, size, inflatedSize - size);
+					if ((len == 0) && (inflater.needsInput() || inflater.needsDictionary()))
+					{
+						break;
+					}
+					size += len;
 				}
-				catch (IOException e)
+				
+				if (!inflater.finished())
 				{
-					exception = e;
+					// Either truncated or longer than announced, count what is left to report the real size.
+					final byte[] rest = new byte[BLOCK_SIZE * 64];
+					int len;
+					while ((len = inflater.inflate(rest)) > 0)
+					{
+						size += len;
+					}
 				}
+				
+				if (size != inflatedSize)
+				{
+					throw new InflateSizeException(inflatedSize, size);
+				}
+			}
+			catch (DataFormatException e)
+			{
+				throw new ZipException(e.getMessage());
 			}
+			finally
+			{
+				inflater.end();
+			}
+			
+			return ByteBuffer.wrap(inflated);
 		}
-		catch (Exception e2)
+		
+		@Override
+		public ByteBuffer encryptResult()
 		{
-			exception = e2;
+			final byte[] data = _result.toByteArray();
+			final int blocks = (data.length + BLOCK_DATA_SIZE - 1) / BLOCK_DATA_SIZE;
+			final byte[] result = new byte[blocks * BLOCK_SIZE];
+			try
+			{
+				encryptBlocks(data, 0, blocks, result);
+			}
+			catch (Exception e)
+			{
+				LOGGER.log(Level.WARNING, e.getMessage(), e);
+			}
+			
+			return ByteBuffer.wrap(result);
 		}
 		
-		if (exception != null)
+		@Override
+		public boolean update(byte[] b) throws Exception
 		{
-			throw exception;
+			Exception exception = null;
+			try
+			{
+				if (!_encrypt)
+				{
+					return update(ByteBuffer.wrap(b));
+				}
+				else
+				{
+					try
+					{
+						final byte[] deflated = deflate(b);
+						final int l = b.length;
+						(_result = new ByteArrayOutputStream(10 + deflated.length)).write(l & 0xFF);
+						_result.write((l & 0xFF00) >> 8);
+						_result.write((l & 0xFF0000) >> 16);
+						_result.write((l & 0xFF000000) >> 24);
+						_result.write(deflated);
+					}
+					catch (IOException e)
+					{
+						exception = e;
+					}
+				}
+			}
+			catch (Exception e2)
+			{
+				exception = e2;
+			}
+			
+			if (exception != null)
+			{
+				throw exception;
+			}
+			
+			return true;
 		}
 		
-		return true;
-	}
+		@Override
+		public boolean update(ByteBuffer data) throws Exception
+		{
+			if (_encrypt)
+			{
+				final byte[] b = new byte[data.remaining()];
+				data.get(b);
+				return update(b);
+			}
+			
+			// The payload is never bigger than the encrypted blocks, so a whole file fed at once lands in a single exactly sized array.
+			final int blocks = data.remaining() / BLOCK_SIZE;
+			final int capacity = _decryptedSize + (blocks * BLOCK_SIZE);
+			if (_decrypted == null)
+			{
+				_decrypted = new byte[capacity];
+			}
+			else if (_decrypted.length < capacity)
+			{
+				_decrypted = Arrays.copyOf(_decrypted, Math.max(capacity, _decrypted.length * 2));
+			}
+			
+			final int size = decryptBlocks(data, blocks, _decrypted, _decryptedSize);
+			data.position(data.limit());
+			if (size < 0)
+			{
+				return false;
+			}
+			
+			_decryptedSize += size;
+			return true;
+		}
 	
-	@Override
-	public void aquire()
-	{
-		super.aquire();
-		_result = new ByteArrayOutputStream(128);
 	}
 	
 	@Override
@@ -16,48 +16,84 @@
  */
 package org.l2explorer.clientcryptor.crypt;
 
-import java.io.ByteArrayOutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
 
 public class XorDatCrypter extends DatCrypter
 {
+	private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	
 	private final boolean _encrypt;
 	private final int _xorKey;
-	private ByteArrayOutputStream _result;
+	private final long _xorMask;
 	
 	public XorDatCrypter(String name, int code, int key, boolean deCrypt)
 	{
 		super(name, code);
 		_encrypt = !deCrypt;
 		_xorKey = key;
+		// Only the low byte of the key is ever applied, spread it over the 8 lanes of a long.
+		_xorMask = (key & 0xFFL) * 0x0101010101010101L;
 	}
 	
-	@Override
-	public ByteBuffer decryptResult()
+	/**
+	 * XORs {@code length} bytes of {@code data} in place, 8 bytes at a time.
+	 * @param data the bytes to transform
+	 * @param offset the first byte to transform
+	 * @param length the amount of bytes to transform
+	 */
+	public void transform(byte[] data, int offset, int length)
 	{
-		return ByteBuffer.wrap(_result.toByteArray());
+		final int end = offset + length;
+		int i = offset;
+		for (; (i + Long.BYTES) <= end; i += Long.BYTES)
+		{
+			LONG_VIEW.set(data, i, (long) LONG_VIEW.get(data, i) ^ _xorMask);
+		}
+		for (; i < end; i++)
+		{
+			data[i] = (byte) (data[i] ^ _xorKey);
+		}
 	}
 	
-	@Override
-	public ByteBuffer encryptResult()
+	/**
+	 * XORs the remaining content of a writable buffer in place, the buffer position is left untouched.
+	 * @param data the bytes to transform
+	 */
+	public void transform(ByteBuffer data)
 	{
-		return ByteBuffer.wrap(_result.toByteArray());
+		if (data.hasArray())
+		{
+			transform(data.array(), data.arrayOffset() + data.position(), data.remaining());
+			return;
+		}
+		
+		final ByteBuffer view = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+		final int end = view.limit();
+		int i = 0;
+		for (; (i + Long.BYTES) <= end; i += Long.BYTES)
+		{
+			view.putLong(i, view.getLong(i) ^ _xorMask);
+		}
+		for (; i < end; i++)
+		{
+			view.put(i, (byte) (view.get(i) ^ _xorKey));
+		}
 	}
 	
 	@Override
-	public boolean update(byte[] bArray)
+	public DatCrypterSession newSession()
 	{
-		for (byte b : bArray)
-		{
-			_result.write(b ^ _xorKey);
-		}
-		return true;
+		return new Session();
 	}
 	
 	@Override
 	public int getChunkSize(int available)
 	{
-		return 1;
+		return available;
 	}
 	
 	@Override
@@ -72,10 +108,51 @@ public class XorDatCrypter extends DatCrypter
 		return _encrypt;
 	}
 	
-	@Override
-	public void aquire()
+	private class Session extends DatCrypterSession
 	{
-		super.aquire();
-		_result = new ByteArrayOutputStream(128);
+		private byte[] _result = new byte[0];
+		private int _size;
+		
+		Session()
+		{
+			super(XorDatCrypter.this);
+		}
+		
+		@Override
+		public ByteBuffer decryptResult()
+		{
+			return ByteBuffer.wrap(getResult());
+		}
+		
+		@Override
+		public ByteBuffer encryptResult()
+		{
+			return ByteBuffer.wrap(getResult());
+		}
+		
+		@Override
+		public boolean update(byte[] bArray)
+		{
+			return update(ByteBuffer.wrap(bArray));
+		}
+		
+		@Override
+		public boolean update(ByteBuffer data)
+		{
+			final int length = data.remaining();
+			if (_result.length < (_size + length))
+			{
+				_result = Arrays.copyOf(_result, Math.max(_size + length, _result.length * 2));
+			}
+			data.get(_result, _size, length);
+			transform(_result, _size, length);
+			_size += length;
+			return true;
+		}
+		
+		private byte[] getResult()
+		{
+			return (_result.length == _size) ? _result : Arrays.copyOf(_result, _size);
+		}
 	}
 }
@@ -0,0 +1,51 @@
+/*
+ * This file is part of the L2ExplorerDat project.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.l2explorer.clientcryptor.exceptions;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a decrypted .dat payload does not inflate to the size announced in its 4 bytes header.
+ */
+public class InflateSizeException extends IOException
+{
+	private final long _expectedSize;
+	private final long _inflatedSize;
+	
+	public InflateSizeException(long expectedSize, long inflatedSize)
+	{
+		super("Inflated result does not have the expected length (" + inflatedSize + "!=" + expectedSize + ")");
+		_expectedSize = expectedSize;
+		_inflatedSize = inflatedSize;
+	}
+	
+	/**
+	 * @return the size written in the payload header
+	 */
+	public long getExpectedSize()
+	{
+		return _expectedSize;
+	}
+	
+	/**
+	 * @return the amount of bytes the compressed stream really inflates to, or -1 when it was not inflated because the expected size is not plausible
+	 */
+	public long getInflatedSize()
+	{
+		return _inflatedSize;
+	}
+}
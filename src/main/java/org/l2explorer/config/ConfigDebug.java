@@ -32,6 +32,10 @@ public class ConfigDebug
 	public static boolean DAT_REPLACEMENT_ENUMS;
 	public static boolean ENCRYPT;
 	public static boolean SAVE_DECODE;
+	public static int DAT_CRYPT_THREADS;
+	public static int DAT_MASS_THREADS;
+	public static boolean DAT_VERIFY_CRC;
+	public static boolean DAT_DESCRIPTOR_CACHE;
 	
 	public static void load()
 	{
@@ -46,6 +50,10 @@ public class ConfigDebug
 			DAT_REPLACEMENT_ENUMS = parser.getBoolean("DAT_REPLACEMENT_ENUMS", true);
 			ENCRYPT = parser.getBoolean("ENCRYPT", true);
 			SAVE_DECODE = parser.getBoolean("SAVE_DECODE", false);
+			DAT_CRYPT_THREADS = parser.getInt("DAT_CRYPT_THREADS", 0);
+			DAT_MASS_THREADS = parser.getInt("DAT_MASS_THREADS", 0);
+			DAT_VERIFY_CRC = parser.getBoolean("DAT_VERIFY_CRC", false);
+			DAT_DESCRIPTOR_CACHE = parser.getBoolean("DAT_DESCRIPTOR_CACHE", true);
 		}
 		catch (Exception e)
 		{
@@ -18,15 +18,15 @@ package org.l2explorer.data;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -59,9 +59,14 @@ public class GameDataName
 	};
 
 	private final Lock _lock = new ReentrantLock();
-	private final Map<Integer, String> _names = new TreeMap<>();
-	private final Map<String, Integer> _nameHash = new HashMap<>();
-	private File _currDataNameFile = null;
+	/** Names by id, in id order, read without the lock once the table is loaded. */
+	private final Map<Integer, String> _names = new ConcurrentSkipListMap<>();
+	/** Ids by lower case name, read without the lock once the table is loaded. */
+	private final Map<String, Integer> _nameHash = new ConcurrentHashMap<>();
+	private volatile File _currDataNameFile = null;
+	private volatile boolean _deferNewNames;
+	/** New names met by the current thread while they are deferred, by lower case name, in order. */
+	private final ThreadLocal<Map<String, String>> _deferredNames = ThreadLocal.withInitial(LinkedHashMap::new);
 
 	public GameDataName()
 	{
@@ -119,34 +124,29 @@ public class GameDataName
 
 				if (file.exists())
 				{
-					final FileInputStream fis = new FileInputStream(file);
-					if (fis.available() < 28)
+					if (file.length() < DatFile.HEADER_SIZE)
 					{
 						L2ExplorerDat.addLogConsole(file.getName() + " The file is too small.", true);
-						fis.close();
 						return;
 					}
 
-					final byte[] head = new byte[28];
-					fis.read(head);
-					fis.close();
-					final String header = new String(head, StandardCharsets.UTF_16LE);
-					if (!header.startsWith("Lineage2Ver"))
+					final int cryptCode = DatFile.readCryptCode(file);
+					if (cryptCode < 0)
 					{
 						L2ExplorerDat.addLogConsole("GameDataName: File " + file.getName() + " not encrypted. Skip decrypt.", true);
 						return;
 					}
 
-					if (Integer.parseInt(header.substring(11)) != decCrypter.getCode())
+					if (cryptCode != decCrypter.getCode())
 					{
-						L2ExplorerDat.addLogConsole("GameDataName: File " + file.getName() + " encrypted code: " + header + ". Skip decrypt.", true);
+						L2ExplorerDat.addLogConsole("GameDataName: File " + file.getName() + " encrypted code: Lineage2Ver" + cryptCode + ". Skip decrypt.", true);
 						return;
 					}
 
 					L2ExplorerDat.addLogConsole("Unpacking [" + file.getName() + "]", true);
 					final DatFile dat = new DatFile(file.getAbsolutePath());
 					dat.decrypt(decCrypter);
-					final ByteBuffer buff = dat.getBuff();
+					final ByteBuffer buff = ByteReader.littleEndian(dat.getBuff());
 					for (int size = ByteReader.readUInt(buff), j = 0; j < size; ++j)
 					{
 						final String name2 = ByteReader.readUtfString(buff, false);
@@ -177,32 +177,37 @@ public class GameDataName
 
 	public String getString(File currentFile, DatCrypter crypter, int index, boolean mass) throws Exception
 	{
-		_lock.lock();
-		try
+		if (_currDataNameFile == null)
 		{
-			if (_currDataNameFile == null)
-			{
-				load(currentFile, crypter);
-			}
-
-			if (!mass && !_names.containsKey(index) && _currDataNameFile.exists())
+			_lock.lock();
+			try
 			{
-				L2ExplorerDat.addLogConsole("GameDataName: Not found string for index: " + index, true);
-				return "[None]";
+				if (_currDataNameFile == null)
+				{
+					load(currentFile, crypter);
+				}
 			}
-
-			final String val = _names.getOrDefault(index, "<StrID:" + index + ">");
-			if (!mass && val.isEmpty())
+			finally
 			{
-				L2ExplorerDat.addLogConsole("GameDataName: String name Empty!!! Index: " + index + ", file: " + currentFile.getName(), true);
+				_lock.unlock();
 			}
+		}
 
-			return "[" + val + "]";
+		// The table is only read from here, without the lock: parallel unpacks resolve names concurrently.
+		final String name = _names.get(index);
+		if (!mass && (name == null) && _currDataNameFile.exists())
+		{
+			L2ExplorerDat.addLogConsole("GameDataName: Not found string for index: " + index, true);
+			return "[None]";
 		}
-		finally
+
+		final String val = (name == null) ? "<StrID:" + index + ">" : name;
+		if (!mass && val.isEmpty())
 		{
-			_lock.unlock();
+			L2ExplorerDat.addLogConsole("GameDataName: String name Empty!!! Index: " + index + ", file: " + currentFile.getName(), true);
 		}
+
+		return "[" + val + "]";
 	}
 
 	public int getId(File currentFile, DatCrypter crypter, ParamNode node, String str, boolean mass) throws Exception
@@ -222,6 +227,16 @@ public class GameDataName
 			return -1;
 		}
 
+		final String key = str.toLowerCase();
+		if (_currDataNameFile != null)
+		{
+			final Integer id = _nameHash.get(key);
+			if (id != null)
+			{
+				return id;
+			}
+		}
+
 		_lock.lock();
 		try
 		{
@@ -230,9 +245,9 @@ public class GameDataName
 				load(currentFile, crypter);
 			}
 
-			if (_nameHash.containsKey(str.toLowerCase()))
+			if (_nameHash.containsKey(key))
 			{
-				return _nameHash.get(str.toLowerCase());
+				return _nameHash.get(key);
 			}
 
 			if (str.matches("^<StrID:(\\d+)>$"))
@@ -240,6 +255,12 @@ public class GameDataName
 				return Integer.parseInt(str.replaceAll("^<StrID:(\\d+)>$", "$1"));
 			}
 
+			if (_deferNewNames)
+			{
+				_deferredNames.get().putIfAbsent(key, str);
+				return -1;
+			}
+
 			final int newIndex = _names.size();
 			_names.put(newIndex, str);
 			_nameHash.put(str.toLowerCase(), newIndex);
@@ -251,6 +272,52 @@ public class GameDataName
 		}
 	}
 
+	/**
+	 * Starts or ends a dry run of a parallel pack. While new names are deferred, {@link #getId} gives -1 for a name that is not known yet and the calling thread keeps it for {@link #takeDeferredNames()}, so the ids can then be given by {@link #addNames(List)} in the order of a serial pack.
+	 * @param defer {@code true} to defer the new names
+	 */
+	public void setDeferNewNames(boolean defer)
+	{
+		_deferNewNames = defer;
+	}
+
+	/**
+	 * @return the new names met by the current thread since the last call, in the order they were met
+	 */
+	public List<String> takeDeferredNames()
+	{
+		final Map<String, String> names = _deferredNames.get();
+		final List<String> result = new ArrayList<>(names.values());
+		names.clear();
+		return result;
+	}
+
+	/**
+	 * Gives the next ids to the names not known yet, as {@link #getId} would when meeting them in this order.
+	 * @param names the names, without brackets
+	 */
+	public void addNames(List<String> names)
+	{
+		_lock.lock();
+		try
+		{
+			for (String name : names)
+			{
+				final String key = name.toLowerCase();
+				if (!_nameHash.containsKey(key))
+				{
+					final int newIndex = _names.size();
+					_names.put(newIndex, name);
+					_nameHash.put(key, newIndex);
+				}
+			}
+		}
+		finally
+		{
+			_lock.unlock();
+		}
+	}
+
 	public void checkAndUpdate(String currentDir, DatCrypter crypter) throws Exception
 	{
 		_lock.lock();
@@ -0,0 +1,357 @@
+/*
+ * This file is part of the L2ExplorerDat project.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.l2explorer.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Growable little-endian output with the same encodings as {@link ByteWriter}, written straight into one buffer.<br>
+ * Space can be reserved and filled in later, either in place with {@link #put(int, byte[])} or with {@link #splice(int, int, byte[], int)} when the final value has another length.
+ */
+public class ByteEmitter
+{
+	private static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+	private static final byte[] EMPTY = new byte[0];
+	/** Empty reservations share their offset, they keep the order they were reserved in. */
+	private static final Comparator<Splice> SPLICE_ORDER = Comparator.<Splice> comparingInt(splice -> splice.offset).thenComparingInt(splice -> splice.sequence);
+	
+	private ByteBuffer _buffer;
+	private List<Splice> _splices;
+	private int _reserveCount;
+	
+	/**
+	 * @param capacity the initial capacity in bytes
+	 */
+	public ByteEmitter(int capacity)
+	{
+		_buffer = ByteBuffer.allocate(Math.max(capacity, 16)).order(BYTE_ORDER);
+	}
+	
+	/**
+	 * @return the number of bytes written so far, before splices
+	 */
+	public int position()
+	{
+		return _buffer.position();
+	}
+	
+	private ByteBuffer ensure(int length)
+	{
+		final ByteBuffer buffer = _buffer;
+		if (buffer.remaining() >= length)
+		{
+			return buffer;
+		}
+		
+		final int capacity = Math.max(buffer.capacity() * 2, buffer.position() + length);
+		final ByteBuffer grown = ByteBuffer.allocate(capacity).order(BYTE_ORDER);
+		grown.put(buffer.array(), 0, buffer.position());
+		_buffer = grown;
+		return grown;
+	}
+	
+	public void writeByte(int value)
+	{
+		ensure(1).put((byte) value);
+	}
+	
+	public void writeShort(int value)
+	{
+		ensure(2).putShort((short) value);
+	}
+	
+	public void writeInt(int value)
+	{
+		ensure(4).putInt(value);
+	}
+	
+	public void writeLong(long value)
+	{
+		ensure(8).putLong(value);
+	}
+	
+	public void writeFloat(float value)
+	{
+		ensure(4).putFloat(value);
+	}
+	
+	public void writeDouble(double value)
+	{
+		ensure(8).putDouble(value);
+	}
+	
+	public void writeBytes(byte[] bytes)
+	{
+		ensure(bytes.length).put(bytes);
+	}
+	
+	public void writeCompactInt(int value)
+	{
+		final ByteBuffer buffer = ensure(5);
+		final int v = Math.abs(value);
+		int size = 5;
+		while ((size > 1) && (getCompactPart(v, size - 1) == 0))
+		{
+			--size;
+		}
+		
+		for (int j = 0; j < size; ++j)
+		{
+			int part = getCompactPart(v, j);
+			if ((j == 0) && (value < 0))
+			{
+				part |= 0x80;
+			}
+			if (j != (size - 1))
+			{
+				part |= (j == 0) ? 0x40 : 0x80;
+			}
+			buffer.put((byte) part);
+		}
+	}
+	
+	/**
+	 * @return the bits of a compact int byte: 6 bits in the first byte, 7 in the next ones
+	 */
+	private static int getCompactPart(int v, int index)
+	{
+		return (index == 0) ? (v & 0x3F) : ((v >> (6 + ((index - 1) * 7))) & 0x7F);
+	}
+	
+	/**
+	 * @param rgb the color as 6 hex digits
+	 */
+	public void writeRGB(String rgb)
+	{
+		final int r = Integer.parseInt(rgb.substring(0, 2), 16);
+		final int g = Integer.parseInt(rgb.substring(2, 4), 16);
+		final int b = Integer.parseInt(rgb.substring(4, 6), 16);
+		final ByteBuffer buffer = ensure(3);
+		buffer.put((byte) r);
+		buffer.put((byte) g);
+		buffer.put((byte) b);
+	}
+	
+	/**
+	 * @param rgba the color as 8 hex digits
+	 */
+	public void writeRGBA(String rgba)
+	{
+		final int a = Integer.parseInt(rgba.substring(6, 8), 16);
+		writeRGB(rgba.substring(0, 6));
+		writeByte(a);
+	}
+	
+	public void writeUtfString(String str, boolean isRaw)
+	{
+		if (str.isEmpty())
+		{
+			writeInt(0);
+			return;
+		}
+		
+		if (!isRaw)
+		{
+			str = ByteWriter.checkAndReplaceNewLine(str);
+		}
+		
+		final int size = str.length();
+		final ByteBuffer buffer = ensure((size * 2) + 4);
+		buffer.putInt(size * 2);
+		for (int i = 0; i < size; ++i)
+		{
+			buffer.putChar(str.charAt(i));
+		}
+	}
+	
+	public void writeString(String str, boolean isRaw)
+	{
+		if ((str == null) || str.isEmpty())
+		{
+			writeCompactInt(0);
+			return;
+		}
+		
+		if (!isRaw)
+		{
+			str = ByteWriter.checkAndReplaceNewLine(str);
+		}
+		
+		if (isAscii(str))
+		{
+			final int size = str.length();
+			writeCompactInt(size + 1);
+			final ByteBuffer buffer = ensure(size + 1);
+			for (int i = 0; i < size; ++i)
+			{
+				buffer.put((byte) str.charAt(i));
+			}
+			buffer.put((byte) 0);
+		}
+		else
+		{
+			final byte[] bytes = (str + '\0').getBytes(StandardCharsets.UTF_16LE);
+			writeCompactInt(-bytes.length / 2);
+			writeBytes(bytes);
+		}
+	}
+	
+	private static boolean isAscii(String str)
+	{
+		for (int i = 0; i < str.length(); i++)
+		{
+			if (str.charAt(i) >= 0x80)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @return the number of reservations made so far, the sequence number of the next one
+	 */
+	public int getReserveCount()
+	{
+		return _reserveCount;
+	}
+	
+	/**
+	 * Reserves zeroed space to be filled in later.
+	 * @param length the number of bytes
+	 * @return the offset of the reserved space
+	 */
+	public int reserve(int length)
+	{
+		final ByteBuffer buffer = ensure(length);
+		final int offset = buffer.position();
+		buffer.position(offset + length);
+		++_reserveCount;
+		return offset;
+	}
+	
+	/**
+	 * Overwrites bytes already written.
+	 * @param offset the offset of the first byte
+	 * @param bytes the new bytes
+	 */
+	public void put(int offset, byte[] bytes)
+	{
+		_buffer.put(offset, bytes);
+	}
+	
+	/**
+	 * Replaces bytes already written with bytes of another length. Splices are applied by {@link #toByteArray()}, so offsets keep referring to the bytes as written.
+	 * @param offset the offset of the first replaced byte
+	 * @param length the number of replaced bytes
+	 * @param bytes the new bytes, or {@code null} to only remove
+	 * @param sequence the {@link #getReserveCount()} before the space was reserved, it orders the splices made at the same offset
+	 */
+	public void splice(int offset, int length, byte[] bytes, int sequence)
+	{
+		if (_splices == null)
+		{
+			_splices = new ArrayList<>();
+		}
+		_splices.add(new Splice(offset, length, (bytes == null) ? EMPTY : bytes, sequence));
+	}
+	
+	/**
+	 * @return a copy of the written bytes, with the splices applied
+	 */
+	public byte[] toByteArray()
+	{
+		final byte[] data = _buffer.array();
+		final int size = _buffer.position();
+		if (_splices == null)
+		{
+			final byte[] result = new byte[size];
+			System.arraycopy(data, 0, result, 0, size);
+			return result;
+		}
+		
+		_splices.sort(SPLICE_ORDER);
+		int length = size;
+		for (Splice splice : _splices)
+		{
+			length += splice.bytes.length - splice.length;
+		}
+		
+		final byte[] result = new byte[length];
+		int from = 0;
+		int to = 0;
+		for (Splice splice : _splices)
+		{
+			final int copied = splice.offset - from;
+			System.arraycopy(data, from, result, to, copied);
+			to += copied;
+			System.arraycopy(splice.bytes, 0, result, to, splice.bytes.length);
+			to += splice.bytes.length;
+			from = splice.offset + splice.length;
+		}
+		System.arraycopy(data, from, result, to, size - from);
+		return result;
+	}
+	
+	/**
+	 * Writes the bytes written so far, with the splices applied, and starts over with an empty buffer. Offsets taken before are no longer valid.
+	 * @param os the destination
+	 * @throws IOException
+	 */
+	public void drainTo(OutputStream os) throws IOException
+	{
+		final byte[] data = _buffer.array();
+		final int size = _buffer.position();
+		int from = 0;
+		if (_splices != null)
+		{
+			_splices.sort(SPLICE_ORDER);
+			for (Splice splice : _splices)
+			{
+				os.write(data, from, splice.offset - from);
+				os.write(splice.bytes);
+				from = splice.offset + splice.length;
+			}
+			_splices = null;
+		}
+		os.write(data, from, size - from);
+		_buffer.clear();
+	}
+	
+	private static class Splice
+	{
+		final int offset;
+		final int length;
+		final byte[] bytes;
+		final int sequence;
+		
+		Splice(int offset, int length, byte[] bytes, int sequence)
+		{
+			this.offset = offset;
+			this.length = length;
+			this.bytes = bytes;
+			this.sequence = sequence;
+		}
+	}
+}
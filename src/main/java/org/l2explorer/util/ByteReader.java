@@ -16,18 +16,37 @@
  */
 package org.l2explorer.util;
 
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
+/**
+ * Reads the little-endian values of the client files.<br>
+ * Multi-byte values are read in the order of the buffer, so buffers must be switched with {@link #littleEndian(ByteBuffer)} before the first read.
+ */
 public class ByteReader
 {
+	private static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
 	private static final Charset DEFAULT_CHARSET = Charset.forName("cp1252");
 	private static final Charset UTF_16_LE_CHARSET = StandardCharsets.UTF_16LE;
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+	private static final char BYTE_ORDER_MARK = '\uFEFF';
 	private static final Logger LOGGER = Logger.getLogger(ByteReader.class.getName());
 
+	/**
+	 * Switches the buffer to the byte order of the client files. Duplicates and slices start big-endian again.
+	 * @param buffer the buffer to read
+	 * @return the same buffer
+	 */
+	public static ByteBuffer littleEndian(ByteBuffer buffer)
+	{
+		return (buffer.order() == BYTE_ORDER) ? buffer : buffer.order(BYTE_ORDER);
+	}
+
 	public static char readChar(ByteBuffer buffer)
 	{
 		return (char) buffer.get();
@@ -40,7 +59,7 @@ public class ByteReader
 
 	public static int readInt(ByteBuffer buffer)
 	{
-		return Integer.reverseBytes(buffer.getInt());
+		return buffer.getInt();
 	}
 
 	public static int readUInt(ByteBuffer buffer)
@@ -50,22 +69,22 @@ public class ByteReader
 
 	public static short readShort(ByteBuffer buffer)
 	{
-		return Short.reverseBytes(buffer.getShort());
+		return buffer.getShort();
 	}
 
 	public static double readDouble(ByteBuffer buffer)
 	{
-		return Double.longBitsToDouble(Long.reverseBytes(buffer.getLong()));
+		return buffer.getDouble();
 	}
 
 	public static long readLong(ByteBuffer buffer)
 	{
-		return Long.reverseBytes(buffer.getLong());
+		return buffer.getLong();
 	}
 
 	public static float readFloat(ByteBuffer buffer)
 	{
-		return Float.intBitsToFloat(Integer.reverseBytes(buffer.getInt()));
+		return buffer.getFloat();
 	}
 
 	public static int readCompactInt(ByteBuffer input) {
@@ -108,35 +127,29 @@ public class ByteReader
 
 	public static String readRGB(ByteBuffer buffer)
 	{
-		String r = Integer.toHexString(buffer.get() & 0xFF).toUpperCase();
-		if (r.length() < 2)
-		{
-			r = "0" + r;
-		}
-
-		String g = Integer.toHexString(buffer.get() & 0xFF).toUpperCase();
-		if (g.length() < 2)
-		{
-			g = "0" + g;
-		}
-
-		String b = Integer.toHexString(buffer.get() & 0xFF).toUpperCase();
-		if (b.length() < 2)
-		{
-			b = "0" + b;
-		}
-
-		return r + g + b;
+		return readHex(buffer, 3);
 	}
 
 	public static String readRGBA(ByteBuffer buffer)
 	{
-		String a = Integer.toHexString(buffer.get() & 0xFF).toUpperCase();
-		if (a.length() < 2)
+		return readHex(buffer, 4);
+	}
+
+	/**
+	 * @param buffer the buffer to read
+	 * @param count the number of bytes to read
+	 * @return the bytes as upper case hex digits, in read order
+	 */
+	private static String readHex(ByteBuffer buffer, int count)
+	{
+		final char[] chars = new char[count * 2];
+		for (int i = 0; i < chars.length; i += 2)
 		{
-			a = "0" + a;
+			final int value = buffer.get() & 0xFF;
+			chars[i] = HEX_DIGITS[value >>> 4];
+			chars[i + 1] = HEX_DIGITS[value & 0x0F];
 		}
-		return a + readRGB(buffer);
+		return new String(chars);
 	}
 
 	public static String readUtfString(ByteBuffer buffer, boolean isRaw) throws Exception
@@ -152,21 +165,22 @@ public class ByteReader
 			throw new Exception("To much data.");
 		}
 
-		final byte[] bytes = new byte[size];
-		try
+		int length = size;
+		if ((length & 1) != 0)
 		{
-			for (int i = 0; i < size; i += 2)
-			{
-				bytes[i + 1] = buffer.get();
-				bytes[i] = buffer.get();
-			}
+			// The trailing half character is dropped, as it can not be decoded.
+			LOGGER.log(Level.WARNING, "Odd UTF-16 string size " + size + " at position " + buffer.position() + ".");
+			length--;
 		}
-		catch (Exception e)
+
+		String str = decode(buffer, length, UTF_16_LE_CHARSET);
+		// Still consume the whole size, so the next fields stay aligned.
+		buffer.position(buffer.position() + (size - length));
+		if (!str.isEmpty() && (str.charAt(0) == BYTE_ORDER_MARK))
 		{
-			LOGGER.log(Level.SEVERE, "Erro crítico ao processar o setor X", e);
+			str = str.substring(1);
 		}
-
-		return checkAndReplaceNewLine(isRaw, new String(new String(bytes, "Unicode").getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8));
+		return checkAndReplaceNewLine(isRaw, str);
 	}
 
 	public static String readString(ByteBuffer input, boolean isRaw) throws Exception
@@ -183,9 +197,85 @@ public class ByteReader
 			throw new Exception("To much data.");
 		}
 
-		final byte[] bytes = new byte[size];
-		input.get(bytes);
-		return checkAndReplaceNewLine(isRaw, new String(bytes, 0, bytes.length - ((len > 0) ? 1 : 2), (len > 0) ? ByteReader.DEFAULT_CHARSET : ByteReader.UTF_16_LE_CHARSET).intern());
+		final int terminator = (len > 0) ? 1 : 2;
+		final String str = decode(input, size - terminator, (len > 0) ? ByteReader.DEFAULT_CHARSET : ByteReader.UTF_16_LE_CHARSET);
+		input.position(input.position() + terminator);
+		return checkAndReplaceNewLine(isRaw, str.intern());
+	}
+
+	/**
+	 * Steps over a string written for {@link #readUtfString(ByteBuffer, boolean)} without decoding it.
+	 * @param buffer the buffer to read
+	 * @throws Exception if the size is too large or the string goes past the end of the buffer
+	 */
+	public static void skipUtfString(ByteBuffer buffer) throws Exception
+	{
+		final int size = readInt(buffer);
+		if (size > 1000000)
+		{
+			throw new Exception("To much data.");
+		}
+		skip(buffer, Math.max(0, size));
+	}
+
+	/**
+	 * Steps over a string written for {@link #readString(ByteBuffer, boolean)} without decoding it.
+	 * @param input the buffer to read
+	 * @throws Exception if the size is too large or the string goes past the end of the buffer
+	 */
+	public static void skipString(ByteBuffer input) throws Exception
+	{
+		final int len = readCompactInt(input);
+		final int size = (len >= 0) ? len : (-2 * len);
+		if (size > 1000000)
+		{
+			throw new Exception("To much data.");
+		}
+		skip(input, size);
+	}
+
+	/**
+	 * @param buffer the buffer to read
+	 * @param length the number of bytes to step over
+	 * @throws BufferUnderflowException if fewer bytes remain
+	 */
+	public static void skip(ByteBuffer buffer, int length)
+	{
+		if (length > buffer.remaining())
+		{
+			throw new BufferUnderflowException();
+		}
+		buffer.position(buffer.position() + length);
+	}
+
+	/**
+	 * Decodes the next bytes of the buffer, straight from its backing array when it has one.
+	 * @param buffer the buffer to read
+	 * @param length the number of bytes to decode
+	 * @param charset the charset of the bytes
+	 * @return the decoded string
+	 */
+	private static String decode(ByteBuffer buffer, int length, Charset charset)
+	{
+		final int position = buffer.position();
+		if (length > buffer.remaining())
+		{
+			throw new BufferUnderflowException();
+		}
+
+		final String str;
+		if (buffer.hasArray())
+		{
+			str = new String(buffer.array(), buffer.arrayOffset() + position, length, charset);
+		}
+		else
+		{
+			final byte[] bytes = new byte[length];
+			buffer.get(position, bytes);
+			str = new String(bytes, charset);
+		}
+		buffer.position(position + length);
+		return str;
 	}
 
 	private static String checkAndReplaceNewLine(boolean isRaw, String str)
@@ -196,7 +196,7 @@ public class ByteWriter
 		return res;
 	}
 	
-	private static String checkAndReplaceNewLine(String str)
+	static String checkAndReplaceNewLine(String str)
 	{
 		if (str.contains("\\r\\n"))
 		{
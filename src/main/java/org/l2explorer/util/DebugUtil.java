@@ -24,7 +24,6 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.l2explorer.config.ConfigDebug;
-import org.l2explorer.xml.Variant;
 
 public class DebugUtil
 {
@@ -38,7 +37,7 @@ public class DebugUtil
 		}
 	}
 	
-	public static void debugPos(int pos, String name, Variant val)
+	public static void debugPos(int pos, String name, String val)
 	{
 		if (ConfigDebug.DAT_DEBUG_POS)
 		{
@@ -0,0 +1,142 @@
+/*
+ * This file is part of the L2ExplorerDat project.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.l2explorer.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.l2explorer.config.ConfigDebug;
+
+/**
+ * Shared worker pool used to split a single heavy job (for example the RSA blocks of one .dat file) across all cores.<br>
+ * Tasks submitted here must never wait on other tasks of the same pool.<br>
+ * Mass actions run their files on a second, bounded pool: a file task may split its own work on the crypt pool, never the other way around.
+ */
+public class ThreadPool
+{
+	private ExecutorService _cryptPool;
+	private int _cryptThreads;
+	private ExecutorService _filePool;
+	private int _fileThreads;
+
+	public ThreadPool()
+	{
+	}
+
+	public synchronized int getCryptThreads()
+	{
+		if (_cryptThreads == 0)
+		{
+			_cryptThreads = ConfigDebug.DAT_CRYPT_THREADS > 0 ? ConfigDebug.DAT_CRYPT_THREADS : Runtime.getRuntime().availableProcessors();
+		}
+		return _cryptThreads;
+	}
+
+	public synchronized int getFileThreads()
+	{
+		if (_fileThreads == 0)
+		{
+			_fileThreads = ConfigDebug.DAT_MASS_THREADS > 0 ? ConfigDebug.DAT_MASS_THREADS : Runtime.getRuntime().availableProcessors();
+		}
+		return _fileThreads;
+	}
+
+	private synchronized ExecutorService getCryptPool()
+	{
+		if (_cryptPool == null)
+		{
+			_cryptPool = newPool(getCryptThreads(), "CryptWorker-");
+		}
+		return _cryptPool;
+	}
+
+	private synchronized ExecutorService getFilePool()
+	{
+		if (_filePool == null)
+		{
+			_filePool = newPool(getFileThreads(), "FileWorker-");
+		}
+		return _filePool;
+	}
+
+	private static ExecutorService newPool(int threads, String prefix)
+	{
+		final AtomicInteger counter = new AtomicInteger();
+		return Executors.newFixedThreadPool(threads, r ->
+		{
+			final Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Runs all tasks on the crypt pool and returns their results in submission order.
+	 * @param <T> the result type
+	 * @param tasks the tasks to run
+	 * @return the results, in the same order as {@code tasks}
+	 * @throws Exception the first failure thrown by a task, unwrapped
+	 */
+	public <T> List<T> invokeAll(List<Callable<T>> tasks) throws Exception
+	{
+		final List<Future<T>> futures = getCryptPool().invokeAll(tasks);
+		final List<T> results = new ArrayList<>(futures.size());
+		for (Future<T> future : futures)
+		{
+			try
+			{
+				results.add(future.get());
+			}
+			catch (ExecutionException e)
+			{
+				if (e.getCause() instanceof Exception)
+				{
+					throw (Exception) e.getCause();
+				}
+				throw e;
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Queues the work on one file of a mass action. At most {@link #getFileThreads()} files are handled at once, whatever the amount queued.
+	 * @param <T> the result type
+	 * @param task the file task, it may use {@link #invokeAll(List)}
+	 * @return the pending result
+	 */
+	public <T> Future<T> submitFile(Callable<T> task)
+	{
+		return getFilePool().submit(task);
+	}
+
+	public static ThreadPool getInstance()
+	{
+		return SingletonHolder.INSTANCE;
+	}
+
+	private static class SingletonHolder
+	{
+		protected static final ThreadPool INSTANCE = new ThreadPool();
+	}
+}
@@ -17,7 +17,11 @@
 package org.l2explorer.xml;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -39,6 +43,7 @@ public class CryptVersionParser
 	
 	private final Map<String, DatCrypter> _encryptKeys = new LinkedHashMap<>();
 	private final Map<String, DatCrypter> _decryptKeys = new LinkedHashMap<>();
+	private final Map<Integer, List<DatCrypter>> _decryptKeysByCode = new HashMap<>();
 	
 	public CryptVersionParser()
 	{
@@ -103,7 +108,12 @@ public class CryptVersionParser
 									dat.setUseStructure(useStructure);
 									if (isDecrypt)
 									{
-										_decryptKeys.put(name, dat);
+										final DatCrypter previous = _decryptKeys.put(name, dat);
+										if (previous != null)
+										{
+											_decryptKeysByCode.get(previous.getCode()).remove(previous);
+										}
+										_decryptKeysByCode.computeIfAbsent(code, k -> new ArrayList<>()).add(dat);
 									}
 									else
 									{
@@ -132,6 +142,16 @@ public class CryptVersionParser
 		return _decryptKeys;
 	}
 	
+	/**
+	 * @param code the {@code Lineage2VerXXX} code of a file
+	 * @return the decrypt keys declared for this code, in cryptVersion.xml order, as a read-only view
+	 */
+	public List<DatCrypter> getDecryptKeys(int code)
+	{
+		final List<DatCrypter> keys = _decryptKeysByCode.get(code);
+		return (keys == null) ? Collections.emptyList() : Collections.unmodifiableList(keys);
+	}
+	
 	public DatCrypter getEncryptKey(String s)
 	{
 		return _encryptKeys.get(s);
@@ -0,0 +1,273 @@
+/*
+ * This file is part of the L2ExplorerDat project.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.l2explorer.xml;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Typed fields of one element of a .dat file, in descriptor order.<br>
+ * Cycles nested in the element are exposed as lists of records, wrappers as single records.
+ */
+public class DatRecord
+{
+	private static final byte LONG_VALUE = 0;
+	private static final byte DOUBLE_VALUE = 1;
+	private static final byte OBJECT_VALUE = 2;
+	
+	private final String _name;
+	private String[] _names = new String[8];
+	private ParamType[] _types = new ParamType[8];
+	private byte[] _kinds = new byte[8];
+	private long[] _longs = new long[8];
+	private double[] _doubles = new double[8];
+	private Object[] _objects = new Object[8];
+	private int _size;
+	
+	DatRecord(String name)
+	{
+		_name = name;
+	}
+	
+	/**
+	 * @return the name of the cycle or wrapper holding this record, or {@code null} for the fields outside of any cycle
+	 */
+	public String getName()
+	{
+		return _name;
+	}
+	
+	public int getFieldCount()
+	{
+		return _size;
+	}
+	
+	public String getFieldName(int index)
+	{
+		checkIndex(index);
+		return _names[index];
+	}
+	
+	/**
+	 * @param index the field index
+	 * @return the type of the field, or {@code null} for nested cycles and wrappers
+	 */
+	public ParamType getFieldType(int index)
+	{
+		checkIndex(index);
+		return _types[index];
+	}
+	
+	/**
+	 * @param name the field name
+	 * @return the index of the first field with this name, or -1
+	 */
+	public int indexOf(String name)
+	{
+		for (int i = 0; i < _size; ++i)
+		{
+			if (_names[i].equals(name))
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	public boolean hasField(String name)
+	{
+		return indexOf(name) >= 0;
+	}
+	
+	/**
+	 * @param index the field index
+	 * @return the value boxed as a {@link Long}, {@link Float}, {@link Double}, {@link String}, {@link DatRecord} or {@link List} of records
+	 */
+	public Object getValue(int index)
+	{
+		checkIndex(index);
+		switch (_kinds[index])
+		{
+			case LONG_VALUE:
+			{
+				return _longs[index];
+			}
+			case DOUBLE_VALUE:
+			{
+				return (_types[index] == ParamType.FLOAT) ? (Object) (float) _doubles[index] : (Object) _doubles[index];
+			}
+			default:
+			{
+				return _objects[index];
+			}
+		}
+	}
+	
+	public Object getValue(String name)
+	{
+		return getValue(getIndex(name));
+	}
+	
+	public long getLong(String name)
+	{
+		final int index = getIndex(name);
+		switch (_kinds[index])
+		{
+			case LONG_VALUE:
+			{
+				return _longs[index];
+			}
+			case DOUBLE_VALUE:
+			{
+				return (long) _doubles[index];
+			}
+			default:
+			{
+				throw new IllegalStateException("Field " + name + " is not a number");
+			}
+		}
+	}
+	
+	public int getInt(String name)
+	{
+		return (int) getLong(name);
+	}
+	
+	public double getDouble(String name)
+	{
+		final int index = getIndex(name);
+		switch (_kinds[index])
+		{
+			case LONG_VALUE:
+			{
+				return _longs[index];
+			}
+			case DOUBLE_VALUE:
+			{
+				return _doubles[index];
+			}
+			default:
+			{
+				throw new IllegalStateException("Field " + name + " is not a number");
+			}
+		}
+	}
+	
+	/**
+	 * @param name the field name
+	 * @return the value of the field as text; strings are returned without the [] brackets of the unpacked text
+	 */
+	public String getString(String name)
+	{
+		return String.valueOf(getValue(getIndex(name)));
+	}
+	
+	public DatRecord getRecord(String name)
+	{
+		final Object value = getValue(getIndex(name));
+		if (!(value instanceof DatRecord))
+		{
+			throw new IllegalStateException("Field " + name + " is not a wrapper");
+		}
+		return (DatRecord) value;
+	}
+	
+	@SuppressWarnings("unchecked")
+	public List<DatRecord> getRecords(String name)
+	{
+		final Object value = getValue(getIndex(name));
+		if (!(value instanceof List))
+		{
+			throw new IllegalStateException("Field " + name + " is not a cycle");
+		}
+		return (List<DatRecord>) value;
+	}
+	
+	void addLong(String name, ParamType type, long value)
+	{
+		final int index = add(name, type, LONG_VALUE);
+		_longs[index] = value;
+	}
+	
+	void addDouble(String name, ParamType type, double value)
+	{
+		final int index = add(name, type, DOUBLE_VALUE);
+		_doubles[index] = value;
+	}
+	
+	void addObject(String name, ParamType type, Object value)
+	{
+		final int index = add(name, type, OBJECT_VALUE);
+		_objects[index] = value;
+	}
+	
+	private int add(String name, ParamType type, byte kind)
+	{
+		if (_size == _names.length)
+		{
+			final int capacity = _size * 2;
+			_names = Arrays.copyOf(_names, capacity);
+			_types = Arrays.copyOf(_types, capacity);
+			_kinds = Arrays.copyOf(_kinds, capacity);
+			_longs = Arrays.copyOf(_longs, capacity);
+			_doubles = Arrays.copyOf(_doubles, capacity);
+			_objects = Arrays.copyOf(_objects, capacity);
+		}
+		_names[_size] = name;
+		_types[_size] = type;
+		_kinds[_size] = kind;
+		return _size++;
+	}
+	
+	private int getIndex(String name)
+	{
+		final int index = indexOf(name);
+		if (index < 0)
+		{
+			throw new IllegalArgumentException("Field " + name + " not found in " + _name);
+		}
+		return index;
+	}
+	
+	private void checkIndex(int index)
+	{
+		if ((index < 0) || (index >= _size))
+		{
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + _size);
+		}
+	}
+	
+	@Override
+	public String toString()
+	{
+		final StringBuilder sb = new StringBuilder();
+		if (_name != null)
+		{
+			sb.append(_name);
+		}
+		sb.append('{');
+		for (int i = 0; i < _size; ++i)
+		{
+			if (i > 0)
+			{
+				sb.append(", ");
+			}
+			sb.append(_names[i]).append('=').append(getValue(i));
+		}
+		return sb.append('}').toString();
+	}
+}
@@ -28,6 +28,8 @@ public class Descriptor
 	private boolean _isRawData;
 	private boolean _isSafePackage;
 	private FormatListener _format;
+	private String _formatName;
+	private volatile ReaderPlan _readerPlan;
 	
 	Descriptor(String alias, String filePattern, List<ParamNode> nodes)
 	{
@@ -72,6 +74,25 @@ public class Descriptor
 		return _nodes;
 	}
 	
+	ReaderPlan getReaderPlan()
+	{
+		ReaderPlan plan = _readerPlan;
+		if (plan == null)
+		{
+			plan = ReaderPlan.compile(_nodes);
+			_readerPlan = plan;
+		}
+		return plan;
+	}
+	
+	/**
+	 * Drops the compiled plan, so the next read compiles it again against the current enums.
+	 */
+	void clearReaderPlan()
+	{
+		_readerPlan = null;
+	}
+	
 	public FormatListener getFormat()
 	{
 		return _format;
@@ -81,4 +102,17 @@ public class Descriptor
 	{
 		_format = format;
 	}
+	
+	/**
+	 * @return the declared formatter class name, kept even when the class could not be loaded
+	 */
+	String getFormatName()
+	{
+		return _formatName;
+	}
+	
+	void setFormatName(String formatName)
+	{
+		_formatName = formatName;
+	}
 }
@@ -0,0 +1,400 @@
+/*
+ * This file is part of the L2ExplorerDat project.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.l2explorer.xml;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+import org.l2explorer.listeners.FormatListener;
+import org.l2explorer.xml.DescriptorParser.EnumFile;
+import org.l2explorer.xml.DescriptorParser.StructureFile;
+
+/**
+ * Binary form of the parsed enum and structure files, stored in {@link #FILE} and read at startup.<br>
+ * Each entry is keyed by the path of its XML file and the hash of the XML content; the whole cache is dropped when the format or the definitions change, since definitions are copied into the descriptors.
+ */
+final class DescriptorCache
+{
+	private static final Logger LOGGER = Logger.getLogger(DescriptorCache.class.getName());
+	
+	static final File FILE = new File("cache/descriptors.bin");
+	
+	private static final int MAGIC = 0x4C324443;
+	/** Increase when the stored model changes. */
+	private static final int FORMAT_VERSION = 1;
+	
+	private final Map<String, Entry> _entries = new HashMap<>();
+	
+	private DescriptorCache()
+	{
+	}
+	
+	/**
+	 * @param definitionsHash the hash of the current definitions
+	 * @return the stored cache, or an empty cache if it is missing, damaged, of another format or built with other definitions
+	 */
+	static DescriptorCache load(long definitionsHash)
+	{
+		final DescriptorCache cache = new DescriptorCache();
+		if (!FILE.isFile())
+		{
+			return cache;
+		}
+		
+		try
+		{
+			// Read on the heap rather than mapped: the descriptors keep slices of it, and a mapped file could not be replaced by save() on Windows.
+			final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(FILE.toPath()));
+			if ((buffer.getInt() != MAGIC) || (buffer.getInt() != FORMAT_VERSION) || (buffer.getLong() != definitionsHash))
+			{
+				return cache;
+			}
+			
+			final int count = buffer.getInt();
+			for (int i = 0; i < count; i++)
+			{
+				final String path = readString(buffer);
+				final long hash = buffer.getLong();
+				final int length = buffer.getInt();
+				cache._entries.put(path, new Entry(hash, buffer.slice(buffer.position(), length)));
+				buffer.position(buffer.position() + length);
+			}
+		}
+		catch (Exception e)
+		{
+			LOGGER.log(Level.WARNING, "Ignoring descriptor cache " + FILE + ": " + e.getMessage());
+			cache._entries.clear();
+		}
+		return cache;
+	}
+	
+	/**
+	 * @param path the path of the XML file
+	 * @param hash the hash of the XML content
+	 * @return the stored data, or {@code null} if it was built from another content
+	 */
+	ByteBuffer get(String path, long hash)
+	{
+		final Entry entry = _entries.get(path);
+		return ((entry == null) || (entry.hash != hash)) ? null : entry.data.duplicate();
+	}
+	
+	/**
+	 * @return the number of stored files
+	 */
+	int size()
+	{
+		return _entries.size();
+	}
+	
+	/**
+	 * Replaces the stored cache. Failures are only logged, the next start parses the XML again.
+	 * @param definitionsHash the hash of the current definitions
+	 * @param enumFiles the enum files
+	 * @param structureFiles the structure files
+	 */
+	static void save(long definitionsHash, Iterable<EnumFile> enumFiles, Iterable<StructureFile> structureFiles)
+	{
+		final File temp = new File(FILE.getPath() + ".tmp");
+		try
+		{
+			final Map<String, Entry> entries = new LinkedHashMap<>();
+			for (EnumFile enums : enumFiles)
+			{
+				entries.put(enums._path, new Entry(enums._hash, enums.getData()));
+			}
+			for (StructureFile structure : structureFiles)
+			{
+				entries.put(structure._path, new Entry(structure._hash, structure.getData()));
+			}
+			
+			FILE.getAbsoluteFile().getParentFile().mkdirs();
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp))))
+			{
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT_VERSION);
+				out.writeLong(definitionsHash);
+				out.writeInt(entries.size());
+				final byte[] chunk = new byte[8192];
+				for (Map.Entry<String, Entry> entry : entries.entrySet())
+				{
+					final ByteBuffer data = entry.getValue().data.duplicate();
+					writeString(out, entry.getKey());
+					out.writeLong(entry.getValue().hash);
+					out.writeInt(data.remaining());
+					while (data.hasRemaining())
+					{
+						final int length = Math.min(chunk.length, data.remaining());
+						data.get(chunk, 0, length);
+						out.write(chunk, 0, length);
+					}
+				}
+			}
+			Files.move(temp.toPath(), FILE.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (Exception e)
+		{
+			LOGGER.log(Level.WARNING, "Cannot save descriptor cache " + FILE + ": " + e.getMessage());
+			temp.delete();
+		}
+	}
+	
+	/**
+	 * @param content the content of a XML file
+	 * @return the hash of the content, with its length in the high bits
+	 */
+	static long hash(byte[] content)
+	{
+		final CRC32C crc = new CRC32C();
+		crc.update(content);
+		return ((long) content.length << 32) | crc.getValue();
+	}
+	
+	static ByteBuffer encodeEnums(EnumFile enums) throws IOException
+	{
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(enums._names.size());
+		for (Map.Entry<String, Map<Integer, String>> entry : enums._names.entrySet())
+		{
+			writeString(out, entry.getKey());
+			out.writeInt(entry.getValue().size());
+			for (Map.Entry<Integer, String> value : entry.getValue().entrySet())
+			{
+				out.writeInt(value.getKey());
+				writeString(out, value.getValue());
+			}
+		}
+		out.writeInt(enums._indexes.size());
+		for (Map.Entry<String, Map<String, String>> entry : enums._indexes.entrySet())
+		{
+			writeString(out, entry.getKey());
+			out.writeInt(entry.getValue().size());
+			for (Map.Entry<String, String> value : entry.getValue().entrySet())
+			{
+				writeString(out, value.getKey());
+				writeString(out, value.getValue());
+			}
+		}
+		return ByteBuffer.wrap(bytes.toByteArray());
+	}
+	
+	static void decodeEnums(ByteBuffer in, EnumFile enums)
+	{
+		for (int i = in.getInt(); i > 0; i--)
+		{
+			final Map<Integer, String> values = enums._names.computeIfAbsent(readString(in), m -> new HashMap<>());
+			for (int j = in.getInt(); j > 0; j--)
+			{
+				values.put(in.getInt(), readString(in));
+			}
+		}
+		for (int i = in.getInt(); i > 0; i--)
+		{
+			final Map<String, String> values = enums._indexes.computeIfAbsent(readString(in), m -> new HashMap<>());
+			for (int j = in.getInt(); j > 0; j--)
+			{
+				values.put(readString(in), readString(in));
+			}
+		}
+	}
+	
+	/**
+	 * Writes the links and the descriptor names first, so they can be read without decoding the descriptors.
+	 * @param structure a structure file with its descriptors
+	 * @return the encoded file
+	 * @throws IOException
+	 */
+	static ByteBuffer encodeStructure(StructureFile structure) throws IOException
+	{
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(structure._links.size());
+		for (Map.Entry<String, List<DescriptorLink>> entry : structure._links.entrySet())
+		{
+			writeString(out, entry.getKey());
+			out.writeInt(entry.getValue().size());
+			for (DescriptorLink link : entry.getValue())
+			{
+				writeString(out, link.getNamePattern());
+				writeString(out, link.getLinkFile());
+				writeString(out, link.getLinkVersion());
+			}
+		}
+		
+		final Map<String, Map<String, Descriptor>> descriptors = structure.getDescriptors();
+		out.writeInt(descriptors.size());
+		for (String name : descriptors.keySet())
+		{
+			writeString(out, name);
+		}
+		for (Map<String, Descriptor> versions : descriptors.values())
+		{
+			out.writeInt(versions.size());
+			for (Map.Entry<String, Descriptor> version : versions.entrySet())
+			{
+				writeString(out, version.getKey());
+				writeDescriptor(out, version.getValue());
+			}
+		}
+		return ByteBuffer.wrap(bytes.toByteArray());
+	}
+	
+	/**
+	 * Reads the links and the descriptor names of a structure file.
+	 * @param in the encoded file
+	 * @param structure the structure file to fill
+	 * @return the position of the descriptors, for {@link #decodeDescriptors(ByteBuffer, int, List)}
+	 */
+	static int decodeLinks(ByteBuffer in, StructureFile structure)
+	{
+		for (int i = in.getInt(); i > 0; i--)
+		{
+			final String dir = readString(in);
+			final List<DescriptorLink> links = new ArrayList<>();
+			for (int j = in.getInt(); j > 0; j--)
+			{
+				links.add(new DescriptorLink(dir, readString(in), readString(in), readString(in)));
+			}
+			structure._links.put(dir, links);
+		}
+		for (int i = in.getInt(); i > 0; i--)
+		{
+			structure._names.add(readString(in));
+		}
+		return in.position();
+	}
+	
+	/**
+	 * @param data the encoded file
+	 * @param position the position returned by {@link #decodeLinks(ByteBuffer, StructureFile)}
+	 * @param names the descriptor names, in the stored order
+	 * @return the descriptors by name and file pattern
+	 */
+	static Map<String, Map<String, Descriptor>> decodeDescriptors(ByteBuffer data, int position, List<String> names)
+	{
+		final ByteBuffer in = data.duplicate();
+		in.position(position);
+		final Map<String, Map<String, Descriptor>> descriptors = new HashMap<>();
+		for (String name : names)
+		{
+			final Map<String, Descriptor> versions = new HashMap<>();
+			for (int i = in.getInt(); i > 0; i--)
+			{
+				final String pattern = readString(in);
+				versions.put(pattern, readDescriptor(in, pattern));
+			}
+			descriptors.put(name, versions);
+		}
+		return descriptors;
+	}
+	
+	private static void writeDescriptor(DataOutputStream out, Descriptor desc) throws IOException
+	{
+		writeString(out, desc.getAlias());
+		out.writeBoolean(desc.isRawData());
+		out.writeBoolean(desc.isSafePackage());
+		writeString(out, desc.getFormatName());
+		out.writeInt(desc.getNodes().size());
+		for (ParamNode node : desc.getNodes())
+		{
+			node.write(out);
+		}
+	}
+	
+	private static Descriptor readDescriptor(ByteBuffer in, String pattern)
+	{
+		final String alias = readString(in);
+		final boolean isRawData = in.get() != 0;
+		final boolean isSafePackage = in.get() != 0;
+		final String formatName = readString(in);
+		final List<ParamNode> nodes = new LinkedList<>();
+		for (int i = in.getInt(); i > 0; i--)
+		{
+			nodes.add(ParamNode.read(in));
+		}
+		
+		final Descriptor desc = new Descriptor(alias, pattern, nodes);
+		desc.setIsRawData(isRawData);
+		desc.setIsSafePackage(isSafePackage);
+		if (formatName != null)
+		{
+			desc.setFormatName(formatName);
+			final FormatListener format = DescriptorParser.createFormat(formatName);
+			if (format != null)
+			{
+				desc.setFormat(format);
+			}
+		}
+		return desc;
+	}
+	
+	static void writeString(DataOutputStream out, String value) throws IOException
+	{
+		if (value == null)
+		{
+			out.writeInt(-1);
+			return;
+		}
+		
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	static String readString(ByteBuffer in)
+	{
+		final int length = in.getInt();
+		if (length < 0)
+		{
+			return null;
+		}
+		
+		final byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	private static class Entry
+	{
+		protected final long hash;
+		protected final ByteBuffer data;
+		
+		protected Entry(long hash, ByteBuffer data)
+		{
+			this.hash = hash;
+			this.data = data;
+		}
+	}
+}
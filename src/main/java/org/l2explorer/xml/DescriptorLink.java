@@ -16,12 +16,19 @@
  */
 package org.l2explorer.xml;
 
+import java.util.regex.Pattern;
+
 public class DescriptorLink
 {
+	/** Plain {@code name.ext} patterns, where the only special character is the {@code .} matching the extension separator. */
+	private static final Pattern LITERAL_NAME = Pattern.compile("[^\\\\\\[\\](){}*+?^$|.]+\\.[^\\\\\\[\\](){}*+?^$|.]{3}");
+	
 	private final String _dir;
 	private final String _namePattern;
 	private final String _linkFile;
 	private final String _linkVersion;
+	private final Pattern _pattern;
+	private final String _literalName;
 	
 	public DescriptorLink(String dir, String namePattern, String linkFile, String linkVersion)
 	{
@@ -29,6 +36,50 @@ public class DescriptorLink
 		_namePattern = namePattern;
 		_linkFile = linkFile;
 		_linkVersion = linkVersion;
+		
+		final String lowerPattern = namePattern.toLowerCase();
+		if (LITERAL_NAME.matcher(lowerPattern).matches())
+		{
+			_pattern = null;
+			_literalName = lowerPattern;
+		}
+		else
+		{
+			_pattern = Pattern.compile(lowerPattern);
+			_literalName = null;
+		}
+	}
+	
+	/**
+	 * @param lowerFileName a lower case file name
+	 * @return {@code true} if the name matches the pattern of this link
+	 */
+	public boolean matches(String lowerFileName)
+	{
+		return _pattern == null ? _literalName.equals(toLiteralKey(lowerFileName)) : _pattern.matcher(lowerFileName).matches();
+	}
+	
+	/**
+	 * The {@code .} of a plain pattern matches any character, as it does in the regular expression.
+	 * @param lowerFileName a lower case file name
+	 * @return the name with the extension separator position set to {@code .}, to be compared with {@link #getLiteralName()}
+	 */
+	public static String toLiteralKey(String lowerFileName)
+	{
+		final int dot = lowerFileName.length() - 4;
+		if ((dot < 1) || (lowerFileName.charAt(dot) == '.'))
+		{
+			return lowerFileName;
+		}
+		return lowerFileName.substring(0, dot) + '.' + lowerFileName.substring(dot + 1);
+	}
+	
+	/**
+	 * @return the lower case {@code name.ext} if the pattern is a plain name, otherwise {@code null}
+	 */
+	public String getLiteralName()
+	{
+		return _literalName;
 	}
 	
 	public String getFilePattern()
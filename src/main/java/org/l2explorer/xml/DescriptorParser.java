@@ -16,27 +16,42 @@
  */
 package org.l2explorer.xml;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.l2explorer.L2ExplorerDat;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-
+import org.l2explorer.config.ConfigDebug;
 import org.l2explorer.listeners.FormatListener;
 import org.l2explorer.util.DebugUtil;
+import org.l2explorer.util.ThreadPool;
 import org.l2explorer.util.Util;
 import org.l2explorer.xml.exceptions.CycleArgumentException;
 
@@ -44,50 +59,189 @@ public class DescriptorParser
 {
 	private static final Logger LOGGER = Logger.getLogger(DescriptorParser.class.getName());
 	
-	private final Map<String, Map<Integer, String>> _enumMap = new HashMap<>();
-	private final Map<String, Map<String, String>> _enumReverseMap = new HashMap<>();
-	private final Map<String, Map<String, Descriptor>> _descriptors = new HashMap<>();
+	private static final String DEFINITIONS_FILE = "data/definitions.xml";
+	private static final String DATA_DIR = "data/";
+	private static final String ENUMS_DIR = "data/enums/";
+	private static final String STRUCTURE_DIR = "data/structure/";
+	static final String FORMAT_PACKAGE = "org.l2explorer.format.";
+	
+	private volatile Map<String, Map<Integer, String>> _enumMap = new HashMap<>();
+	private volatile Map<String, Map<String, String>> _enumReverseMap = new HashMap<>();
 	private final Map<String, List<ParamNode>> _definitions = new HashMap<>();
-	private final Map<String, List<DescriptorLink>> _links = new LinkedHashMap<>();
+	/** What each enum and structure file contributes, in load order. */
+	private final Map<File, EnumFile> _enumFiles = new LinkedHashMap<>();
+	private final Map<File, StructureFile> _structureFiles = new LinkedHashMap<>();
+	private volatile Structures _structures = new Structures(new LinkedHashMap<>(), new HashMap<>());
+	private DescriptorWatcher _watcher;
+	private long _dataStamp;
+	private long _definitionsHash;
 	
 	public DescriptorParser()
 	{
 	}
 	
-	public void parse()
+	public synchronized void parse()
 	{
+		if (L2ExplorerDat.DEV_MODE && (_watcher == null))
+		{
+			_watcher = DescriptorWatcher.create(DATA_DIR, ENUMS_DIR, STRUCTURE_DIR);
+		}
+		
+		_dataStamp = getDataStamp();
+		// Definitions are copied into the structures, so they are loaded first.
 		parseDefinitions();
-		Util.loadFiles("data/enums/", ".xml").forEach(this::parseEnum);
-		Util.loadFiles("data/structure/", ".xml").forEach(this::parseDescriptor);
+		final DescriptorCache cache = ConfigDebug.DAT_DESCRIPTOR_CACHE ? DescriptorCache.load(_definitionsHash) : null;
+		parseAll(Util.loadFiles(ENUMS_DIR, ".xml"), file -> loadEnum(file, cache), _enumFiles);
+		parseAll(Util.loadFiles(STRUCTURE_DIR, ".xml"), file -> loadStructure(file, cache), _structureFiles);
+		mergeEnums();
+		mergeStructures();
+		if ((cache != null) && !isCacheCurrent(cache))
+		{
+			DescriptorCache.save(_definitionsHash, _enumFiles.values(), _structureFiles.values());
+		}
+	}
+	
+	/**
+	 * @param cache the loaded cache
+	 * @return {@code true} if every file was read from the cache and the cache holds no other file
+	 */
+	private boolean isCacheCurrent(DescriptorCache cache)
+	{
+		if (cache.size() != (_enumFiles.size() + _structureFiles.size()))
+		{
+			return false;
+		}
+		return _enumFiles.values().stream().allMatch(enums -> enums._data != null) && _structureFiles.values().stream().allMatch(StructureFile::isCached);
+	}
+	
+	/**
+	 * @param file a data file
+	 * @return the path of the file relative to the data directory, used as cache key
+	 */
+	private static String getCachePath(File file)
+	{
+		return Paths.get(DATA_DIR).toAbsolutePath().relativize(file.getAbsoluteFile().toPath()).toString().replace('\\', '/');
+	}
+	
+	/**
+	 * Parses the files on the shared worker pool and stores the results in file order.
+	 * @param <T> the parse result
+	 * @param files the files to parse
+	 * @param parser the parser of one file, reporting its own errors
+	 * @param results the results by absolute file
+	 */
+	private static <T> void parseAll(List<File> files, Function<File, T> parser, Map<File, T> results)
+	{
+		final List<Callable<T>> tasks = new ArrayList<>(files.size());
+		for (File file : files)
+		{
+			tasks.add(() -> parser.apply(file));
+		}
+		
+		List<T> parsed;
+		try
+		{
+			parsed = ThreadPool.getInstance().invokeAll(tasks);
+		}
+		catch (Exception e)
+		{
+			LOGGER.log(Level.WARNING, "Parallel loading failed, loading one file at a time: " + e.getMessage(), e);
+			parsed = new ArrayList<>(files.size());
+			for (File file : files)
+			{
+				parsed.add(parser.apply(file));
+			}
+		}
+		
+		for (int i = 0; i < files.size(); i++)
+		{
+			results.put(files.get(i).getAbsoluteFile(), parsed.get(i));
+		}
+	}
+	
+	private void mergeEnums()
+	{
+		final Map<String, Map<Integer, String>> enumMap = new HashMap<>();
+		final Map<String, Map<String, String>> enumReverseMap = new HashMap<>();
+		_enumFiles.forEach((file, enums) ->
+		{
+			enums._names.forEach((name, values) ->
+			{
+				if (enumMap.containsKey(name))
+				{
+					LOGGER.log(Level.WARNING, ("parseEnum Node name duplicated [" + name + "]  fileName: " + file.getName()));
+				}
+				enumMap.computeIfAbsent(name, m -> new HashMap<>()).putAll(values);
+			});
+			enums._indexes.forEach((name, values) -> enumReverseMap.computeIfAbsent(name, m -> new HashMap<>()).putAll(values));
+		});
+		_enumMap = enumMap;
+		_enumReverseMap = enumReverseMap;
+	}
+	
+	private void mergeStructures()
+	{
+		final Map<String, List<DescriptorLink>> links = new LinkedHashMap<>();
+		final Map<String, List<StructureFile>> sources = new HashMap<>();
+		for (StructureFile structure : _structureFiles.values())
+		{
+			structure._links.forEach((dir, list) -> links.computeIfAbsent(dir, d -> new ArrayList<>()).addAll(list));
+			structure._names.forEach(name -> sources.computeIfAbsent(name, n -> new ArrayList<>()).add(structure));
+		}
+		_structures = new Structures(links, sources);
+	}
+	
+	/**
+	 * @return a value that changes when a definition, enum or structure file is added, removed or modified
+	 */
+	private static long getDataStamp()
+	{
+		long stamp = new File(DEFINITIONS_FILE).lastModified();
+		for (File file : Util.loadFiles(ENUMS_DIR, ".xml"))
+		{
+			stamp = (stamp * 31) + file.lastModified();
+		}
+		for (File file : Util.loadFiles(STRUCTURE_DIR, ".xml"))
+		{
+			stamp = (stamp * 31) + file.lastModified();
+		}
+		return stamp;
 	}
 	
 	private void parseDefinitions()
 	{
-		final File def = new File("data/definitions.xml");
+		final File def = new File(DEFINITIONS_FILE);
+		_definitionsHash = 0;
 		if (def.exists())
 		{
-			final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-			factory.setValidating(false);
-			factory.setIgnoringElementContentWhitespace(true);
-			factory.setIgnoringComments(true);
 			try
 			{
-				final Document document = factory.newDocumentBuilder().parse(def);
-				for (Node defsNode = document.getFirstChild(); defsNode != null; defsNode = document.getNextSibling())
+				final byte[] content = Files.readAllBytes(def.toPath());
+				_definitionsHash = DescriptorCache.hash(content);
+				final XMLStreamReader reader = createReader(new ByteArrayInputStream(content));
+				try
 				{
-					if (defsNode.getNodeName().equals("definitions"))
+					if (nextRoot(reader) && reader.getLocalName().equals("definitions"))
 					{
-						for (Node defNode = defsNode.getFirstChild(); defNode != null; defNode = defNode.getNextSibling())
+						while (nextChild(reader))
 						{
-							if (defNode.getNodeName().equals("definition"))
+							if (reader.getLocalName().equals("definition"))
 							{
-								final String defName = defNode.getAttributes().getNamedItem("name").getNodeValue();
-								final List<ParamNode> nodes = parseNodes(defNode, true, new HashSet<>(), "definitions->" + defName, Collections.emptyList());
+								final String defName = reader.getAttributeValue(null, "name");
+								final List<ParamNode> nodes = parseNodes(reader, true, new HashSet<>(), "definitions->" + defName, Collections.emptyList());
 								_definitions.put(defName, nodes);
 							}
+							else
+							{
+								skipElement(reader);
+							}
 						}
 					}
 				}
+				finally
+				{
+					reader.close();
+				}
 			}
 			catch (Exception e)
 			{
@@ -96,306 +250,395 @@ public class DescriptorParser
 		}
 	}
 	
-	private void parseEnum(File file)
+	private EnumFile loadEnum(File file, DescriptorCache cache)
 	{
+		final EnumFile enums = new EnumFile(getCachePath(file));
 		if (!file.exists())
 		{
 			DebugUtil.debug("File " + file.getName() + " not found.");
-			return;
+			return enums;
 		}
 		
 		try
 		{
-			final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-			factory.setValidating(false);
-			factory.setIgnoringElementContentWhitespace(true);
-			factory.setIgnoringComments(true);
-			final Document document = factory.newDocumentBuilder().parse(file);
-			for (Node defsNode = document.getFirstChild(); defsNode != null; defsNode = document.getNextSibling())
+			final byte[] content = Files.readAllBytes(file.toPath());
+			enums._hash = DescriptorCache.hash(content);
+			final ByteBuffer data = (cache == null) ? null : cache.get(enums._path, enums._hash);
+			if (data != null)
 			{
-				if (defsNode.getNodeName().equals("list"))
+				try
+				{
+					DescriptorCache.decodeEnums(data.duplicate(), enums);
+					enums._data = data;
+					return enums;
+				}
+				catch (RuntimeException e)
 				{
-					for (Node defNode = defsNode.getFirstChild(); defNode != null; defNode = defNode.getNextSibling())
+					LOGGER.log(Level.WARNING, "Damaged descriptor cache entry for " + file.getName() + ", parsing it again.");
+					enums._names.clear();
+					enums._indexes.clear();
+				}
+			}
+			parseEnum(file, new ByteArrayInputStream(content), enums);
+		}
+		catch (Exception e)
+		{
+			LOGGER.log(Level.WARNING, e.getMessage(), e);
+		}
+		return enums;
+	}
+	
+	private void parseEnum(File file, InputStream in, EnumFile enums) throws Exception
+	{
+		final XMLStreamReader reader = createReader(in);
+		try
+		{
+			if (nextRoot(reader) && reader.getLocalName().equals("list"))
+			{
+				while (nextChild(reader))
+				{
+					if (!reader.getLocalName().equals("enum"))
+					{
+						skipElement(reader);
+						continue;
+					}
+					
+					final String defName = reader.getAttributeValue(null, "name");
+					if (defName == null)
+					{
+						LOGGER.log(Level.WARNING, ("parseEnum name == null, fileName: " + file.getName()));
+						skipElement(reader);
+						continue;
+					}
+					
+					if (enums._names.containsKey(defName))
 					{
-						if (defNode.getNodeName().equals("enum"))
+						LOGGER.log(Level.WARNING, ("parseEnum Node name duplicated [" + defName + "]  fileName: " + file.getName()));
+					}
+					
+					final Map<Integer, String> eTypes = enums._names.computeIfAbsent(defName, m -> new HashMap<>());
+					final Map<String, String> eReverseTypes = enums._indexes.computeIfAbsent(defName, m -> new HashMap<>());
+					while (nextChild(reader))
+					{
+						if (reader.getLocalName().equals("node"))
 						{
-							final Node nodeName = defNode.getAttributes().getNamedItem("name");
-							if (nodeName == null)
+							final String eName = reader.getAttributeValue(null, "name");
+							final int eIndex = Integer.parseInt(reader.getAttributeValue(null, "index"));
+							if (eReverseTypes.containsKey(eName))
 							{
-								LOGGER.log(Level.WARNING, ("parseEnum name == null, fileName: " + file.getName()));
+								LOGGER.log(Level.WARNING, ("parseEnum Node name duplicated [" + eName + "]  fileName: " + file.getName() + " name: " + defName));
 							}
-							else
+							if (eTypes.containsKey(eIndex))
 							{
-								final String defName = nodeName.getNodeValue();
-								if (_enumMap.containsKey(defName))
-								{
-									LOGGER.log(Level.WARNING, ("parseEnum Node name duplicated [" + defName + "]  fileName: " + file.getName()));
-								}
-								
-								final Map<Integer, String> eTypes = _enumMap.computeIfAbsent(defName, m -> new HashMap<>());
-								final Map<String, String> eReverseTypes = _enumReverseMap.computeIfAbsent(defName, m -> new HashMap<>());
-								for (Node node = defNode.getFirstChild(); node != null; node = node.getNextSibling())
-								{
-									if (node.getNodeName().equals("node"))
-									{
-										final String eName = node.getAttributes().getNamedItem("name").getNodeValue();
-										final int eIndex = Integer.parseInt(node.getAttributes().getNamedItem("index").getNodeValue());
-										if (eReverseTypes.containsKey(eName))
-										{
-											LOGGER.log(Level.WARNING, ("parseEnum Node name duplicated [" + eName + "]  fileName: " + file.getName() + " name: " + defName));
-										}
-										if (eTypes.containsKey(eIndex))
-										{
-											LOGGER.log(Level.WARNING, ("parseEnum Node index duplicated [" + eIndex + "]  fileName: " + file.getName() + " name: " + defName));
-										}
-										eTypes.put(eIndex, eName);
-										eReverseTypes.put(eName, String.valueOf(eIndex));
-									}
-								}
+								LOGGER.log(Level.WARNING, ("parseEnum Node index duplicated [" + eIndex + "]  fileName: " + file.getName() + " name: " + defName));
 							}
+							eTypes.put(eIndex, eName);
+							eReverseTypes.put(eName, String.valueOf(eIndex));
 						}
+						skipElement(reader);
 					}
 				}
 			}
 		}
-		catch (Exception e)
+		finally
 		{
-			LOGGER.log(Level.WARNING, e.getMessage(), e);
+			reader.close();
 		}
 	}
 	
-	private void parseDescriptor(File file)
+	private StructureFile loadStructure(File file, DescriptorCache cache)
 	{
+		final StructureFile structure = new StructureFile(getCachePath(file));
 		if (!file.exists())
 		{
 			DebugUtil.debug("File " + file.getName() + " not found.");
-			return;
+			return structure;
 		}
 		
 		try
 		{
-			final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-			factory.setValidating(false);
-			factory.setIgnoringElementContentWhitespace(true);
-			factory.setIgnoringComments(true);
-			final Document document = factory.newDocumentBuilder().parse(file);
-			for (Node fileNode0 = document.getFirstChild(); fileNode0 != null; fileNode0 = document.getNextSibling())
+			final byte[] content = Files.readAllBytes(file.toPath());
+			structure._hash = DescriptorCache.hash(content);
+			final ByteBuffer data = (cache == null) ? null : cache.get(structure._path, structure._hash);
+			if (data != null)
+			{
+				try
+				{
+					structure.setCached(data, DescriptorCache.decodeLinks(data.duplicate(), structure));
+					return structure;
+				}
+				catch (RuntimeException e)
+				{
+					LOGGER.log(Level.WARNING, "Damaged descriptor cache entry for " + file.getName() + ", parsing it again.");
+					structure._links.clear();
+					structure._names.clear();
+				}
+			}
+			parseDescriptor(file, new ByteArrayInputStream(content), structure);
+		}
+		catch (Exception e)
+		{
+			LOGGER.log(Level.WARNING, e.getMessage(), e);
+		}
+		structure._names.addAll(structure.getDescriptors().keySet());
+		return structure;
+	}
+	
+	private void parseDescriptor(File file, InputStream in, StructureFile structure) throws Exception
+	{
+		final XMLStreamReader reader = createReader(in);
+		try
+		{
+			if (nextRoot(reader) && reader.getLocalName().equalsIgnoreCase("list"))
 			{
-				if (fileNode0.getNodeName().equalsIgnoreCase("list"))
+				final String chronicle = reader.getAttributeValue(null, "name");
+				while (nextChild(reader))
 				{
-					for (Node fileNode2 = fileNode0.getFirstChild(); fileNode2 != null; fileNode2 = fileNode2.getNextSibling())
+					if (reader.getLocalName().equalsIgnoreCase("link"))
 					{
-						if (fileNode2.getNodeName().equalsIgnoreCase("link"))
+						final String dir = (chronicle != null) ? chronicle : file.getName().substring(0, file.getName().length() - 4);
+						final String namePattern = reader.getAttributeValue(null, "pattern");
+						final String linkFile = reader.getAttributeValue(null, "file");
+						final String linkVersion = reader.getAttributeValue(null, "version");
+						List<DescriptorLink> list = structure._links.get(dir);
+						if (list == null)
 						{
-							final Node chronicleNode = fileNode0.getAttributes().getNamedItem("name");
-							final String dir = (chronicleNode != null) ? chronicleNode.getNodeValue() : file.getName().substring(0, file.getName().length() - 4);
-							final String namePattern = fileNode2.getAttributes().getNamedItem("pattern").getNodeValue();
-							final String linkFile = fileNode2.getAttributes().getNamedItem("file").getNodeValue();
-							final String linkVersion = fileNode2.getAttributes().getNamedItem("version").getNodeValue();
-							List<DescriptorLink> list = _links.get(dir);
-							if (list == null)
-							{
-								list = new ArrayList<>();
-							}
-							list.add(new DescriptorLink(dir, namePattern, linkFile, linkVersion));
-							_links.put(dir, list);
+							list = new ArrayList<>();
 						}
-						else if (fileNode2.getNodeName().equalsIgnoreCase("file"))
+						list.add(new DescriptorLink(dir, namePattern, linkFile, linkVersion));
+						structure._links.put(dir, list);
+						skipElement(reader);
+					}
+					else if (reader.getLocalName().equalsIgnoreCase("file"))
+					{
+						final String dir2 = file.getName().substring(0, file.getName().length() - 4);
+						final String namePattern2 = reader.getAttributeValue(null, "pattern");
+						final boolean isRawData = parseBoolNode(reader, "isRaw", false);
+						final boolean isSafePackage = parseBoolNode(reader, "isSafePackage", false);
+						final String formatName = parseStringNode(reader, "format", null);
+						
+						DebugUtil.debug("Boot of parsing file: " + namePattern2);
+						
+						final List<ParamNode> nodes = parseNodes(reader, false, new HashSet<>(), dir2 + "->" + namePattern2, Collections.emptyList());
+						final Descriptor desc = new Descriptor(file.getName(), namePattern2, nodes);
+						desc.setIsRawData(isRawData);
+						desc.setIsSafePackage(isSafePackage);
+						if (formatName != null)
 						{
-							final String dir2 = file.getName().substring(0, file.getName().length() - 4);
-							final String namePattern2 = fileNode2.getAttributes().getNamedItem("pattern").getNodeValue();
-							final boolean isRawData = parseBoolNode(fileNode2, "isRaw", false);
-							final boolean isSafePackage = parseBoolNode(fileNode2, "isSafePackage", false);
-							final String formatName = parseStringNode(fileNode2, "format", null);
-							
-							DebugUtil.debug("Boot of parsing file: " + namePattern2);
-							
-							final List<ParamNode> nodes = parseNodes(fileNode2, false, new HashSet<>(), dir2 + "->" + namePattern2, Collections.emptyList());
-							final Descriptor desc = new Descriptor(file.getName(), namePattern2, nodes);
-							desc.setIsRawData(isRawData);
-							desc.setIsSafePackage(isSafePackage);
-							if (formatName != null)
-							{
-								try
-								{
-									final Class<?> clazz = Class.forName("org.l2explorer.format." + formatName);
-									
-									if (!FormatListener.class.isAssignableFrom(clazz))
-									{
-										LOGGER.log(Level.WARNING, "Format class '" + formatName + "' does not implement FormatListener!");
-									}
-									else
-									{
-										final FormatListener format = (FormatListener) clazz.getDeclaredConstructor().newInstance();
-										
-										desc.setFormat(format);
-									}
-								}
-								catch (ClassNotFoundException e)
-								{
-									LOGGER.log(Level.WARNING, "Format class '" + formatName + "' not found in classpath!");
-								}
-								catch (Exception e)
-								{
-									LOGGER.log(Level.WARNING, "Failed to instantiate format '" + formatName + "'", e);
-								}
-							}
-							
-							Map<String, Descriptor> versions = _descriptors.get(dir2);
-							if (versions == null)
+							desc.setFormatName(formatName);
+							final FormatListener format = createFormat(formatName);
+							if (format != null)
 							{
-								versions = new HashMap<>();
+								desc.setFormat(format);
 							}
-							versions.put(namePattern2, desc);
-							_descriptors.put(dir2, versions);
-							DebugUtil.debug("End of parsing file: " + namePattern2);
 						}
+						
+						Map<String, Descriptor> versions = structure.getDescriptors().get(dir2);
+						if (versions == null)
+						{
+							versions = new HashMap<>();
+						}
+						versions.put(namePattern2, desc);
+						structure.getDescriptors().put(dir2, versions);
+						DebugUtil.debug("End of parsing file: " + namePattern2);
+					}
+					else
+					{
+						skipElement(reader);
 					}
 				}
 			}
 		}
+		finally
+		{
+			reader.close();
+		}
+	}
+	
+	/**
+	 * @param formatName the class name of the formatter, relative to {@link #FORMAT_PACKAGE}
+	 * @return a new formatter, or {@code null} if the class is missing or invalid
+	 */
+	static FormatListener createFormat(String formatName)
+	{
+		try
+		{
+			final Class<?> clazz = Class.forName(FORMAT_PACKAGE + formatName);
+			
+			if (!FormatListener.class.isAssignableFrom(clazz))
+			{
+				LOGGER.log(Level.WARNING, "Format class '" + formatName + "' does not implement FormatListener!");
+				return null;
+			}
+			return (FormatListener) clazz.getDeclaredConstructor().newInstance();
+		}
+		catch (ClassNotFoundException e)
+		{
+			LOGGER.log(Level.WARNING, "Format class '" + formatName + "' not found in classpath!");
+		}
 		catch (Exception e)
 		{
-			LOGGER.log(Level.WARNING, e.getMessage(), e);
+			LOGGER.log(Level.WARNING, "Failed to instantiate format '" + formatName + "'", e);
 		}
+		return null;
 	}
 	
-	private List<ParamNode> parseNodes(Node fileNode, boolean isHideName, Set<String> names, String fileName, List<ParamNode> parentNodes) throws Exception
+	/**
+	 * Reads the child elements of the current element.
+	 * @param reader a reader positioned on the start of the parent element, left on its end
+	 * @param isHideName {@code true} to hide the read variables
+	 * @param names the variable names read so far, to report duplicates
+	 * @param fileName the description of the parsed file, for messages
+	 * @param parentNodes the nodes of the parent element, to find cycle iterators
+	 * @return the nodes
+	 * @throws Exception if the structure is invalid
+	 */
+	private List<ParamNode> parseNodes(XMLStreamReader reader, boolean isHideName, Set<String> names, String fileName, List<ParamNode> parentNodes) throws Exception
 	{
 		final Map<String, Integer> defsCounter = new HashMap<>();
 		final List<ParamNode> nodes = new LinkedList<>();
-		for (Node node = fileNode.getFirstChild(); node != null; node = node.getNextSibling())
+		while (nextChild(reader))
 		{
-			final String nodeName = node.getNodeName();
-			if (!nodeName.equals("#text"))
+			final String nodeName = reader.getLocalName();
+			final boolean isHide = isHideName || parseBoolNode(reader, "hidden", true);
+			if (nodeName.equalsIgnoreCase("else"))
 			{
-				final boolean isHide = isHideName || parseBoolNode(node, "hidden", true);
-				if (nodeName.equalsIgnoreCase("else"))
+				final ParamNode prevNode = nodes.isEmpty() ? null : nodes.get(nodes.size() - 1);
+				if (prevNode == null)
 				{
-					final ParamNode prevNode = nodes.isEmpty() ? null : nodes.get(nodes.size() - 1);
-					if (prevNode == null)
-					{
-						DebugUtil.debug("Not found previous IF for [else] data!");
-					}
-					else
-					{
-						final ParamNode beginNode = new ParamNode(prevNode.getName(), ParamNodeType.ELSE, null);
-						beginNode.setParamIf(prevNode.getParamIf());
-						beginNode.setValIf(prevNode.getValIf());
-						beginNode.addSubNodes(parseNodes(node, false, names, fileName, nodes));
-						final Node enumName = node.getAttributes().getNamedItem("enumName");
-						if (enumName != null)
-						{
-							beginNode.setEnumName(enumName.getNodeValue());
-						}
-						nodes.add(beginNode);
-						DebugUtil.debug("Found [else] data: " + prevNode.getName());
-					}
+					DebugUtil.debug("Not found previous IF for [else] data!");
 				}
-				else if (node.getAttributes().getNamedItem("name") == null)
+				else
 				{
-					LOGGER.log(Level.WARNING, ("Node name == null, fileName: " + fileName));
+					final ParamNode beginNode = new ParamNode(prevNode.getName(), ParamNodeType.ELSE, null);
+					beginNode.setParamIf(prevNode.getParamIf());
+					beginNode.setValIf(prevNode.getValIf());
+					final String enumName = reader.getAttributeValue(null, "enumName");
+					if (enumName != null)
+					{
+						beginNode.setEnumName(enumName);
+					}
+					beginNode.addSubNodes(parseNodes(reader, false, names, fileName, nodes));
+					nodes.add(beginNode);
+					DebugUtil.debug("Found [else] data: " + prevNode.getName());
 				}
-				else
+			}
+			else if (reader.getAttributeValue(null, "name") == null)
+			{
+				LOGGER.log(Level.WARNING, ("Node name == null, fileName: " + fileName));
+			}
+			else
+			{
+				final String entityName = reader.getAttributeValue(null, "name");
+				if (nodeName.equalsIgnoreCase("node"))
 				{
-					final String entityName = node.getAttributes().getNamedItem("name").getNodeValue();
-					if (nodeName.equalsIgnoreCase("node"))
+					final String type = reader.getAttributeValue(null, "reader");
+					if (_definitions.containsKey(type))
 					{
-						final String type = node.getAttributes().getNamedItem("reader").getNodeValue();
-						if (_definitions.containsKey(type))
+						if (!defsCounter.containsKey(type))
 						{
-							if (!defsCounter.containsKey(type))
-							{
-								defsCounter.put(type, 1);
-							}
-							else
-							{
-								defsCounter.put(type, defsCounter.get(type) + 1);
-							}
-							
-							final List<ParamNode> defNodes = _definitions.get(type);
-							for (ParamNode defNode : defNodes)
-							{
-								final ParamNode copied = defNode.copy();
-								copied.setName(entityName);
-								if (isHide)
-								{
-									copied.setHidden();
-								}
-								nodes.add(copied);
-							}
+							defsCounter.put(type, 1);
 						}
 						else
 						{
-							final ParamNode dataNode = new ParamNode(entityName, ParamNodeType.VARIABLE, ParamType.valueOf(type));
+							defsCounter.put(type, defsCounter.get(type) + 1);
+						}
+						
+						final List<ParamNode> defNodes = _definitions.get(type);
+						for (ParamNode defNode : defNodes)
+						{
+							final ParamNode copied = defNode.copy();
+							copied.setName(entityName);
 							if (isHide)
 							{
-								dataNode.setHidden();
+								copied.setHidden();
 							}
-							
-							final Node enumName = node.getAttributes().getNamedItem("enumName");
-							if (enumName != null)
-							{
-								dataNode.setEnumName(enumName.getNodeValue());
-							}
-							
-							nodes.add(dataNode);
-							DebugUtil.debug("Found node: " + dataNode.getName());
-						}
-						if (names.contains(entityName))
-						{
-							LOGGER.log(Level.WARNING, ("Node name duplicated [" + entityName + "]\tfileName: " + fileName));
+							nodes.add(copied);
 						}
-						names.add(entityName);
 					}
-					else if (nodeName.equalsIgnoreCase("for"))
+					else
 					{
-						String iteratorName = entityName;
-						final boolean skipWriteSize = parseBoolNode(node, "skipWriteSize", false);
-						int size = -1;
-						if (node.getAttributes().getNamedItem("size") != null)
+						final ParamNode dataNode = new ParamNode(entityName, ParamNodeType.VARIABLE, ParamType.valueOf(type));
+						if (isHide)
 						{
-							final String sizeStr = node.getAttributes().getNamedItem("size").getNodeValue();
-							if (sizeStr.startsWith("#"))
-							{
-								iteratorName = sizeStr.substring(1);
-							}
-							else
-							{
-								size = Integer.parseInt(sizeStr);
-							}
+							dataNode.setHidden();
 						}
 						
-						if (size == 0)
+						final String enumName = reader.getAttributeValue(null, "enumName");
+						if (enumName != null)
 						{
-							LOGGER.log(Level.WARNING, ("Size of cycle [" + iteratorName + "] was set to zero. Deprecated cycle?"));
+							dataNode.setEnumName(enumName);
 						}
 						
-						DebugUtil.debug("Found cycle for variable: " + entityName);
-						final ParamNode beginNode2 = new ParamNode(entityName, ParamNodeType.FOR, null);
-						if (size >= 0)
+						nodes.add(dataNode);
+						DebugUtil.debug("Found node: " + dataNode.getName());
+					}
+					if (names.contains(entityName))
+					{
+						LOGGER.log(Level.WARNING, ("Node name duplicated [" + entityName + "]\tfileName: " + fileName));
+					}
+					names.add(entityName);
+				}
+				else if (nodeName.equalsIgnoreCase("for"))
+				{
+					String iteratorName = entityName;
+					final boolean skipWriteSize = parseBoolNode(reader, "skipWriteSize", false);
+					int size = -1;
+					if (reader.getAttributeValue(null, "size") != null)
+					{
+						final String sizeStr = reader.getAttributeValue(null, "size");
+						if (sizeStr.startsWith("#"))
 						{
-							beginNode2.setSize(size);
+							iteratorName = sizeStr.substring(1);
 						}
-						
-						if (isHide)
+						else
 						{
-							beginNode2.setHidden();
+							size = Integer.parseInt(sizeStr);
 						}
-						
-						final Node enumName = node.getAttributes().getNamedItem("enumName");
-						if (enumName != null)
+					}
+					
+					if (size == 0)
+					{
+						LOGGER.log(Level.WARNING, ("Size of cycle [" + iteratorName + "] was set to zero. Deprecated cycle?"));
+					}
+					
+					DebugUtil.debug("Found cycle for variable: " + entityName);
+					final ParamNode beginNode2 = new ParamNode(entityName, ParamNodeType.FOR, null);
+					if (size >= 0)
+					{
+						beginNode2.setSize(size);
+					}
+					
+					if (isHide)
+					{
+						beginNode2.setHidden();
+					}
+					
+					final String enumName = reader.getAttributeValue(null, "enumName");
+					if (enumName != null)
+					{
+						beginNode2.setEnumName(enumName);
+					}
+					
+					beginNode2.setSkipWriteSize(skipWriteSize);
+					beginNode2.addSubNodes(parseNodes(reader, false, names, fileName, nodes));
+					beginNode2.setCycleName(iteratorName);
+					nodes.add(beginNode2);
+					
+					boolean iteratorFound = false;
+					for (ParamNode n : nodes)
+					{
+						if (iteratorName.equals(n.getName()))
 						{
-							beginNode2.setEnumName(enumName.getNodeValue());
+							n.setIterator();
+							iteratorFound = true;
+							break;
 						}
-						
-						beginNode2.setSkipWriteSize(skipWriteSize);
-						beginNode2.addSubNodes(parseNodes(node, false, names, fileName, nodes));
-						beginNode2.setCycleName(iteratorName);
-						nodes.add(beginNode2);
-						
-						boolean iteratorFound = false;
-						for (ParamNode n : nodes)
+					}
+					
+					if (!iteratorFound)
+					{
+						for (ParamNode n : parentNodes)
 						{
 							if (iteratorName.equals(n.getName()))
 							{
@@ -404,95 +647,88 @@ public class DescriptorParser
 								break;
 							}
 						}
-						
-						if (!iteratorFound)
-						{
-							for (ParamNode n : parentNodes)
-							{
-								if (iteratorName.equals(n.getName()))
-								{
-									n.setIterator();
-									iteratorFound = true;
-									break;
-								}
-							}
-						}
-						
-						if (!iteratorFound && (size < 0))
-						{
-							throw new CycleArgumentException("Invalid argument [" + iteratorName + "] for [cycle]");
-						}
 					}
-					else if (nodeName.equalsIgnoreCase("wrapper"))
+					
+					if (!iteratorFound && (size < 0))
 					{
-						final ParamNode beginNode = new ParamNode(entityName, ParamNodeType.WRAPPER, null);
-						beginNode.addSubNodes(parseNodes(node, true, names, fileName, nodes));
-						final Node enumName = node.getAttributes().getNamedItem("enumName");
-						if (enumName != null)
-						{
-							beginNode.setEnumName(enumName.getNodeValue());
-						}
-						nodes.add(beginNode);
-						DebugUtil.debug("Found [wrapper] data " + entityName);
+						throw new CycleArgumentException("Invalid argument [" + iteratorName + "] for [cycle]");
 					}
-					else if (nodeName.equalsIgnoreCase("write"))
+				}
+				else if (nodeName.equalsIgnoreCase("wrapper"))
+				{
+					final ParamNode beginNode = new ParamNode(entityName, ParamNodeType.WRAPPER, null);
+					final String enumName = reader.getAttributeValue(null, "enumName");
+					if (enumName != null)
 					{
-						final ParamNode beginNode = new ParamNode(entityName, ParamNodeType.CONSTANT, ParamType.STRING);
-						beginNode.setHidden();
-						final Node enumName = node.getAttributes().getNamedItem("enumName");
-						if (enumName != null)
-						{
-							beginNode.setEnumName(enumName.getNodeValue());
-						}
-						nodes.add(beginNode);
-						DebugUtil.debug("Found [constant] data: " + entityName);
+						beginNode.setEnumName(enumName);
 					}
-					else if (nodeName.equalsIgnoreCase("if"))
+					beginNode.addSubNodes(parseNodes(reader, true, names, fileName, nodes));
+					nodes.add(beginNode);
+					DebugUtil.debug("Found [wrapper] data " + entityName);
+				}
+				else if (nodeName.equalsIgnoreCase("write"))
+				{
+					final ParamNode beginNode = new ParamNode(entityName, ParamNodeType.CONSTANT, ParamType.STRING);
+					beginNode.setHidden();
+					final String enumName = reader.getAttributeValue(null, "enumName");
+					if (enumName != null)
 					{
-						String paramName = node.getAttributes().getNamedItem("param").getNodeValue();
-						if (!paramName.startsWith("#"))
-						{
-							throw new Exception("Invalid argument [" + entityName + "] for [if]");
-						}
-						
-						final String vsl = node.getAttributes().getNamedItem("val").getNodeValue();
-						paramName = paramName.substring(1);
-						final ParamNode beginNode3 = new ParamNode(entityName, ParamNodeType.IF, null);
-						beginNode3.setParamIf(paramName);
-						beginNode3.setValIf(vsl);
-						beginNode3.addSubNodes(parseNodes(node, false, names, fileName, nodes));
-						final Node enumName = node.getAttributes().getNamedItem("enumName");
-						if (enumName != null)
-						{
-							beginNode3.setEnumName(enumName.getNodeValue());
-						}
-						nodes.add(beginNode3);
-						DebugUtil.debug("Found [if] data: " + entityName);
+						beginNode.setEnumName(enumName);
 					}
-					else if (nodeName.equalsIgnoreCase("mask"))
+					nodes.add(beginNode);
+					DebugUtil.debug("Found [constant] data: " + entityName);
+				}
+				else if (nodeName.equalsIgnoreCase("if"))
+				{
+					String paramName = reader.getAttributeValue(null, "param");
+					if (!paramName.startsWith("#"))
 					{
-						String paramName = node.getAttributes().getNamedItem("param").getNodeValue();
-						if (!paramName.startsWith("#"))
-						{
-							throw new Exception("Invalid argument [" + entityName + "] for [mask]");
-						}
-						
-						final int value = Integer.parseInt(node.getAttributes().getNamedItem("val").getNodeValue());
-						paramName = paramName.substring(1);
-						final ParamNode beginNode3 = new ParamNode(entityName, ParamNodeType.MASK, null);
-						beginNode3.setParamMask(paramName);
-						beginNode3.setValMask(value);
-						beginNode3.addSubNodes(parseNodes(node, false, names, fileName, nodes));
-						final Node enumName = node.getAttributes().getNamedItem("enumName");
-						if (enumName != null)
-						{
-							beginNode3.setEnumName(enumName.getNodeValue());
-						}
-						nodes.add(beginNode3);
-						DebugUtil.debug("Found [mask] data: " + entityName);
+						throw new Exception("Invalid argument [" + entityName + "] for [if]");
+					}
+					
+					final String vsl = reader.getAttributeValue(null, "val");
+					paramName = paramName.substring(1);
+					final ParamNode beginNode3 = new ParamNode(entityName, ParamNodeType.IF, null);
+					beginNode3.setParamIf(paramName);
+					beginNode3.setValIf(vsl);
+					final String enumName = reader.getAttributeValue(null, "enumName");
+					if (enumName != null)
+					{
+						beginNode3.setEnumName(enumName);
 					}
+					beginNode3.addSubNodes(parseNodes(reader, false, names, fileName, nodes));
+					nodes.add(beginNode3);
+					DebugUtil.debug("Found [if] data: " + entityName);
+				}
+				else if (nodeName.equalsIgnoreCase("mask"))
+				{
+					String paramName = reader.getAttributeValue(null, "param");
+					if (!paramName.startsWith("#"))
+					{
+						throw new Exception("Invalid argument [" + entityName + "] for [mask]");
+					}
+					
+					final int value = Integer.parseInt(reader.getAttributeValue(null, "val"));
+					paramName = paramName.substring(1);
+					final ParamNode beginNode3 = new ParamNode(entityName, ParamNodeType.MASK, null);
+					beginNode3.setParamMask(paramName);
+					beginNode3.setValMask(value);
+					final String enumName = reader.getAttributeValue(null, "enumName");
+					if (enumName != null)
+					{
+						beginNode3.setEnumName(enumName);
+					}
+					beginNode3.addSubNodes(parseNodes(reader, false, names, fileName, nodes));
+					nodes.add(beginNode3);
+					DebugUtil.debug("Found [mask] data: " + entityName);
 				}
 			}
+			
+			// Elements without children to read are still open.
+			if (reader.isStartElement())
+			{
+				skipElement(reader);
+			}
 		}
 		return nodes;
 	}
@@ -501,49 +737,136 @@ public class DescriptorParser
 	{
 		if (L2ExplorerDat.DEV_MODE)
 		{
-			reload();
+			reloadChanged();
 		}
 		
-		final List<DescriptorLink> listDes = _links.get(dir);
-		if (listDes == null)
+		final Structures structures = _structures;
+		final LinkTable table = (dir == null) ? null : structures._linkTables.get(dir);
+		if (table == null)
 		{
 			return null;
 		}
 		
-		for (DescriptorLink desc : listDes)
+		return structures._resolved.computeIfAbsent(dir, k -> new ConcurrentHashMap<>()).computeIfAbsent(fileName.toLowerCase(), name -> Optional.ofNullable(resolve(structures, table, name))).orElse(null);
+	}
+	
+	/**
+	 * Walks the plain name links matching {@code fileName} and the pattern links in declaration order, the first link pointing to a loaded descriptor wins.
+	 * @param structures the loaded descriptors
+	 * @param table the links of a chronicle
+	 * @param fileName the lower case file name
+	 * @return the descriptor, or {@code null}
+	 */
+	private static Descriptor resolve(Structures structures, LinkTable table, String fileName)
+	{
+		final int[] literals = table._literals.getOrDefault(DescriptorLink.toLiteralKey(fileName), LinkTable.EMPTY);
+		final int[] patterns = table._patterns;
+		int l = 0;
+		int p = 0;
+		while ((l < literals.length) || (p < patterns.length))
 		{
-			if (fileName.toLowerCase().matches(desc.getNamePattern().toLowerCase()) && _descriptors.containsKey(desc.getLinkFile()))
+			final DescriptorLink link;
+			if ((p >= patterns.length) || ((l < literals.length) && (literals[l] < patterns[p])))
+			{
+				link = table._links.get(literals[l++]);
+			}
+			else
 			{
-				final Map<String, Descriptor> versions = _descriptors.get(desc.getLinkFile());
-				if (versions.containsKey(desc.getLinkVersion()))
+				link = table._links.get(patterns[p++]);
+				if (!link.matches(fileName))
 				{
-					return versions.get(desc.getLinkVersion());
+					continue;
 				}
-				continue;
+			}
+			
+			final Map<String, Descriptor> versions = structures.getVersions(link.getLinkFile());
+			if ((versions != null) && versions.containsKey(link.getLinkVersion()))
+			{
+				return versions.get(link.getLinkVersion());
 			}
 		}
 		
 		return null;
 	}
 	
-	private boolean parseBoolNode(Node node, String name, boolean def)
+	private static boolean parseBoolNode(XMLStreamReader reader, String name, boolean def)
+	{
+		final String value = reader.getAttributeValue(null, name);
+		return (value == null) ? def : value.equalsIgnoreCase("true");
+	}
+	
+	private static String parseStringNode(XMLStreamReader reader, String name, String def)
+	{
+		final String value = reader.getAttributeValue(null, name);
+		return (value == null) ? def : value;
+	}
+	
+	private static XMLStreamReader createReader(InputStream in) throws XMLStreamException
+	{
+		return XMLInputFactory.newDefaultFactory().createXMLStreamReader(in);
+	}
+	
+	/**
+	 * @param reader a new reader
+	 * @return {@code true} if the reader was moved to the start of the root element
+	 * @throws XMLStreamException
+	 */
+	private static boolean nextRoot(XMLStreamReader reader) throws XMLStreamException
 	{
-		if ((node.getAttributes() == null) || (node.getAttributes().getNamedItem(name) == null))
+		while (reader.hasNext())
 		{
-			return def;
+			if (reader.next() == XMLStreamConstants.START_ELEMENT)
+			{
+				return true;
+			}
 		}
-		
-		return node.getAttributes().getNamedItem(name).getNodeValue().equalsIgnoreCase("true");
+		return false;
 	}
 	
-	private String parseStringNode(Node node, String name, String def)
+	/**
+	 * @param reader a reader inside an element
+	 * @return {@code true} if the reader was moved to the start of the next child element, {@code false} if it reached the end of the element
+	 * @throws XMLStreamException
+	 */
+	private static boolean nextChild(XMLStreamReader reader) throws XMLStreamException
 	{
-		if ((node.getAttributes() == null) || (node.getAttributes().getNamedItem(name) == null))
+		while (reader.hasNext())
 		{
-			return def;
+			switch (reader.next())
+			{
+				case XMLStreamConstants.START_ELEMENT:
+				{
+					return true;
+				}
+				case XMLStreamConstants.END_ELEMENT:
+				{
+					return false;
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Moves the reader from the start of an element to its end, ignoring its content.
+	 * @param reader a reader on the start of an element
+	 * @throws XMLStreamException
+	 */
+	private static void skipElement(XMLStreamReader reader) throws XMLStreamException
+	{
+		int depth = 1;
+		while ((depth > 0) && reader.hasNext())
+		{
+			final int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+			{
+				++depth;
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT)
+			{
+				--depth;
+			}
 		}
-		
-		return node.getAttributes().getNamedItem(name).getNodeValue();
 	}
 	
 	public String getEnumNameByIndex(String eName, int index)
@@ -564,6 +887,15 @@ public class DescriptorParser
 		return result;
 	}
 	
+	/**
+	 * @param eName the enum name
+	 * @return the index to name table of the enum, or {@code null} if the enum is unknown
+	 */
+	Map<Integer, String> getEnumTable(String eName)
+	{
+		return _enumMap.get(eName);
+	}
+	
 	public String getEnumNameByName(String eName, String index)
 	{
 		if (!_enumReverseMap.containsKey(eName))
@@ -585,21 +917,263 @@ public class DescriptorParser
 	public Set<String> getChronicleNames()
 	{
 		if (L2ExplorerDat.DEV_MODE)
+		{
+			reloadChanged();
+		}
+		
+		return _structures._links.keySet();
+	}
+	
+	/**
+	 * Reparses the enum and structure files changed since the last call and swaps the result in.<br>
+	 * A change to the definitions reloads everything, since definitions are copied into the descriptors.
+	 */
+	private synchronized void reloadChanged()
+	{
+		if (_watcher == null)
+		{
+			if (getDataStamp() != _dataStamp)
+			{
+				reload();
+			}
+			return;
+		}
+		
+		final Set<File> changed = _watcher.poll();
+		if ((changed == null) || changed.contains(new File(DEFINITIONS_FILE).getAbsoluteFile()))
 		{
 			reload();
+			return;
+		}
+		
+		final Path enumsDir = Paths.get(ENUMS_DIR).toAbsolutePath();
+		final Path structureDir = Paths.get(STRUCTURE_DIR).toAbsolutePath();
+		boolean enumsChanged = false;
+		boolean structuresChanged = false;
+		for (File file : changed)
+		{
+			if (file.toPath().startsWith(enumsDir))
+			{
+				enumsChanged = true;
+				if (file.exists())
+				{
+					_enumFiles.put(file, loadEnum(file, null));
+				}
+				else
+				{
+					_enumFiles.remove(file);
+				}
+			}
+			else if (file.toPath().startsWith(structureDir))
+			{
+				structuresChanged = true;
+				if (file.exists())
+				{
+					_structureFiles.put(file, loadStructure(file, null));
+				}
+				else
+				{
+					_structureFiles.remove(file);
+				}
+			}
 		}
 		
-		return _links.keySet();
+		if (enumsChanged)
+		{
+			mergeEnums();
+			// Compiled reader plans hold the enum tables they were compiled with.
+			for (StructureFile structure : _structureFiles.values())
+			{
+				final Map<String, Map<String, Descriptor>> descriptors = structure.getLoadedDescriptors();
+				if (descriptors != null)
+				{
+					descriptors.values().forEach(versions -> versions.values().forEach(Descriptor::clearReaderPlan));
+				}
+			}
+		}
+		if (structuresChanged)
+		{
+			mergeStructures();
+		}
+		if (enumsChanged || structuresChanged)
+		{
+			L2ExplorerDat.addLogConsole("Reloaded " + changed.size() + " descriptor file(s).", true);
+			if (ConfigDebug.DAT_DESCRIPTOR_CACHE)
+			{
+				DescriptorCache.save(_definitionsHash, _enumFiles.values(), _structureFiles.values());
+			}
+		}
 	}
 	
 	private void reload()
 	{
-		_descriptors.clear();
 		_definitions.clear();
-		_links.clear();
+		_enumFiles.clear();
+		_structureFiles.clear();
 		parse();
 	}
 	
+	/**
+	 * The links and descriptors loaded from all structure files, replaced as a whole when a file changes.
+	 */
+	private static class Structures
+	{
+		protected final Map<String, List<DescriptorLink>> _links;
+		/** The structure files defining each descriptor name, in load order. */
+		protected final Map<String, List<StructureFile>> _sources;
+		/** Descriptor versions by name, merged from their sources the first time they are used. */
+		protected final Map<String, Map<String, Descriptor>> _descriptors = new ConcurrentHashMap<>();
+		protected final Map<String, LinkTable> _linkTables = new HashMap<>();
+		/** Resolved descriptors by chronicle and lower case file name, including misses. */
+		protected final Map<String, Map<String, Optional<Descriptor>>> _resolved = new ConcurrentHashMap<>();
+		
+		protected Structures(Map<String, List<DescriptorLink>> links, Map<String, List<StructureFile>> sources)
+		{
+			_links = links;
+			_sources = sources;
+			links.forEach((dir, list) -> _linkTables.put(dir, new LinkTable(list)));
+		}
+		
+		protected Map<String, Descriptor> getVersions(String name)
+		{
+			final List<StructureFile> sources = _sources.get(name);
+			if (sources == null)
+			{
+				return null;
+			}
+			
+			return _descriptors.computeIfAbsent(name, n ->
+			{
+				final Map<String, Descriptor> versions = new HashMap<>();
+				sources.forEach(structure -> versions.putAll(structure.getDescriptors().getOrDefault(n, Collections.emptyMap())));
+				return versions;
+			});
+		}
+	}
+	
+	/**
+	 * The enums of one enum file.
+	 */
+	static class EnumFile
+	{
+		protected final String _path;
+		protected long _hash;
+		protected final Map<String, Map<Integer, String>> _names = new HashMap<>();
+		protected final Map<String, Map<String, String>> _indexes = new HashMap<>();
+		/** The cached form, read from the cache or built when it is saved. */
+		protected ByteBuffer _data;
+		
+		protected EnumFile(String path)
+		{
+			_path = path;
+		}
+		
+		protected ByteBuffer getData() throws IOException
+		{
+			if (_data == null)
+			{
+				_data = DescriptorCache.encodeEnums(this);
+			}
+			return _data.duplicate();
+		}
+	}
+	
+	/**
+	 * The links and descriptors of one structure file. Descriptors read from the cache are decoded the first time they are used.
+	 */
+	static class StructureFile
+	{
+		protected final String _path;
+		protected long _hash;
+		protected final Map<String, List<DescriptorLink>> _links = new LinkedHashMap<>();
+		/** Names of the descriptors defined in the file, known before they are decoded. */
+		protected final Set<String> _names = new LinkedHashSet<>();
+		private Map<String, Map<String, Descriptor>> _descriptors = new HashMap<>();
+		private ByteBuffer _data;
+		private int _descriptorsPosition;
+		
+		protected StructureFile(String path)
+		{
+			_path = path;
+		}
+		
+		/**
+		 * @param data the cached form of the file
+		 * @param descriptorsPosition the position of the descriptors in {@code data}
+		 */
+		protected synchronized void setCached(ByteBuffer data, int descriptorsPosition)
+		{
+			_data = data;
+			_descriptorsPosition = descriptorsPosition;
+			_descriptors = null;
+		}
+		
+		protected synchronized boolean isCached()
+		{
+			return _data != null;
+		}
+		
+		protected synchronized Map<String, Map<String, Descriptor>> getDescriptors()
+		{
+			if (_descriptors == null)
+			{
+				_descriptors = DescriptorCache.decodeDescriptors(_data, _descriptorsPosition, new ArrayList<>(_names));
+			}
+			return _descriptors;
+		}
+		
+		/**
+		 * @return the descriptors, or {@code null} if they were not decoded yet
+		 */
+		protected synchronized Map<String, Map<String, Descriptor>> getLoadedDescriptors()
+		{
+			return _descriptors;
+		}
+		
+		protected synchronized ByteBuffer getData() throws IOException
+		{
+			if (_data == null)
+			{
+				_data = DescriptorCache.encodeStructure(this);
+			}
+			return _data.duplicate();
+		}
+	}
+	
+	/**
+	 * The links of one chronicle, split into plain file names indexed by name and patterns kept in declaration order.
+	 */
+	private static class LinkTable
+	{
+		protected static final int[] EMPTY = new int[0];
+		
+		protected final List<DescriptorLink> _links;
+		protected final Map<String, int[]> _literals = new HashMap<>();
+		protected final int[] _patterns;
+		
+		protected LinkTable(List<DescriptorLink> links)
+		{
+			_links = links;
+			final List<Integer> patterns = new ArrayList<>();
+			for (int i = 0; i < links.size(); i++)
+			{
+				final String name = links.get(i).getLiteralName();
+				if (name == null)
+				{
+					patterns.add(i);
+				}
+				else
+				{
+					final int[] indexes = _literals.getOrDefault(name, EMPTY);
+					final int[] grown = Arrays.copyOf(indexes, indexes.length + 1);
+					grown[indexes.length] = i;
+					_literals.put(name, grown);
+				}
+			}
+			_patterns = patterns.stream().mapToInt(Integer::intValue).toArray();
+		}
+	}
+	
 	public static DescriptorParser getInstance()
 	{
 		return SingletonHolder.INSTANCE;
@@ -17,28 +17,21 @@
 package org.l2explorer.xml;
 
 import java.io.File;
-import java.math.BigDecimal;
+import java.io.Writer;
 import java.nio.ByteBuffer;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
 import org.l2explorer.L2ExplorerDat;
 import org.l2explorer.actions.ActionTask;
 import org.l2explorer.clientcryptor.crypt.DatCrypter;
 import org.l2explorer.config.ConfigDebug;
 import org.l2explorer.config.ConfigWindow;
-import org.l2explorer.data.GameDataName;
-import org.l2explorer.util.ByteReader;
-import org.l2explorer.util.DebugUtil;
+import org.l2explorer.xml.ReaderPlan.Op;
 
 public class DescriptorReader
 {
-	private static final String EQ = "=";
-	private static final String TAB = "\t";
-	private static final String SEMI = ";";
-	private static final String LB = "[";
-	private static final String RB = "]";
+	/** Rough number of text characters rendered per data byte, used to presize the output. */
+	private static final int TEXT_RATIO = 4;
+	private static final int MAX_INITIAL_CAPACITY = 64 * 1024 * 1024;
 	
 	public DescriptorReader()
 	{
@@ -49,6 +42,11 @@ public class DescriptorReader
 		boolean error = false;
 		double progress = actionTask.getCurrentProgress();
 		final boolean hasFormatter = (desc.getFormat() != null) && !ConfigWindow.CURRENT_FORMATTER.equalsIgnoreCase("Disabled");
+		final ReaderPlan plan = desc.getReaderPlan();
+		final TextSink out = new TextSink(getInitialCapacity(data), null);
+		final TextRenderer renderer = new TextRenderer(out, currentFile, mass, ConfigDebug.DAT_REPLACEMENT_ENUMS);
+		final PlanReader reader = new PlanReader(plan, data, renderer, actionTask, currentFile, crypter, mass, ConfigDebug.DAT_REPLACEMENT_NAMES);
+		renderer.setReader(reader);
 		String stringData;
 		if (desc.isRawData())
 		{
@@ -58,39 +56,27 @@ public class DescriptorReader
 			}
 			
 			progress = actionTask.addProgress(progress, hasFormatter ? 20.0 : 49.0, weight);
-			final StringBuilder builder = new StringBuilder();
-			final ParamNode node = desc.getNodes().get(0);
-			if (!readVariables(currentFile, crypter, node, new HashMap<>(), data, builder, true, mass))
+			final Op op = plan.getRoot().ops[0];
+			if (!reader.readVariable(op, true))
 			{
 				if (mass)
 				{
 					return null;
 				}
 				
-				final String errorMsg = stringData = String.format("Error while parsing variable NAME[%s] TYPE[%s] in file NAME[%s]! Parsed data: %s", node.getName(), node.getType(), currentFile.getName(), builder);
+				final String errorMsg = stringData = String.format("Error while parsing variable NAME[%s] TYPE[%s] in file NAME[%s]! Parsed data: %s", op.name, op.type, currentFile.getName(), out);
 				L2ExplorerDat.addLogConsole(errorMsg, true);
 			}
 			else
 			{
-				stringData = builder.toString();
+				stringData = out.toString();
 			}
 			progress = actionTask.addProgress(progress, 50.0, weight);
 		}
 		else
 		{
-			final Map<String, Variant> vars = new HashMap<>();
-			final Data result = parseData(actionTask, actionTask.getWeightValue(69.0, weight), currentFile, crypter, data, null, desc.getNodes(), 1, vars, false, 0, mass);
-			if (result != null)
-			{
-				stringData = result.data.toString().trim();
-				error = result.error;
-			}
-			else
-			{
-				stringData = "";
-				error = true;
-			}
-			
+			error = !reader.readBlock(plan.getRoot(), 1, actionTask.getWeightValue(69.0, weight));
+			stringData = out.toTrimmedString();
 			if (actionTask.isCancelled())
 			{
 				return null;
@@ -98,7 +84,7 @@ public class DescriptorReader
 			
 			progress = actionTask.addProgress(progress, 69.0, weight);
 		}
-		if (!error && (desc.getFormat() != null) && !ConfigWindow.CURRENT_FORMATTER.equalsIgnoreCase("Disabled"))
+		if (!error && hasFormatter)
 		{
 			stringData = desc.getFormat().decode(actionTask, actionTask.getWeightValue(30.0, weight), stringData);
 			if (actionTask.isCancelled())
@@ -122,513 +108,68 @@ public class DescriptorReader
 		return stringData;
 	}
 	
-	private Data parseData(ActionTask actionTask, double weight, File currentFile, DatCrypter crypter, ByteBuffer data, ParamNode lastNode, List<ParamNode> nodes, int cycleSize, Map<String, Variant> vars, boolean isNameHidden, int cycleNameLevel, boolean mass) throws Exception
+	/**
+	 * Renders the data straight into {@code writer}, so the whole text is never held in memory.<br>
+	 * Raw descriptors and descriptors with an active formatter still render in memory first, since formatters work on the whole text.
+	 * @param actionTask the running task
+	 * @param weight the share of the progress bar covered by this call
+	 * @param currentFile the .dat file
+	 * @param crypter the crypter of the .dat file
+	 * @param desc the descriptor of the file
+	 * @param data the decrypted data
+	 * @param mass {@code true} to keep the log quiet
+	 * @param writer the destination of the text
+	 * @return {@code false} if the data could not be parsed completely or the task was cancelled; the text written so far then ends with the last complete cycle element
+	 * @throws Exception if a cycle is invalid or the writer fails
+	 */
+	public boolean parseData(ActionTask actionTask, double weight, File currentFile, DatCrypter crypter, Descriptor desc, ByteBuffer data, boolean mass, Writer writer) throws Exception
 	{
-		if (cycleSize <= 0)
-		{
-			return null;
-		}
-		
-		if (cycleSize > 1000000)
-		{
-			throw new Exception("To much data.");
-		}
-		
-		final Data result = new Data();
-		final StringBuilder out = result.data;
-		for (int i = 0; i < cycleSize; ++i)
+		final boolean hasFormatter = (desc.getFormat() != null) && !ConfigWindow.CURRENT_FORMATTER.equalsIgnoreCase("Disabled");
+		if (desc.isRawData() || hasFormatter)
 		{
-			if (actionTask.isCancelled())
-			{
-				return null;
-			}
-			
-			final boolean isAddCycleName = !isNameHidden && (lastNode != null) && lastNode.getEntityType().isCycle();
-			if (isAddCycleName)
-			{
-				for (int k = 0; k < cycleNameLevel; ++k)
-				{
-					out.append(TAB);
-				}
-				out.append(lastNode.getName().concat("_begin"));
-				++cycleNameLevel;
-			}
-			
-			final int nodeSize = nodes.size();
-			int nNode = 0;
-			for (ParamNode n : nodes)
-			{
-				if (!n.isIterator())
-				{
-					++nNode;
-				}
-			}
-			
-			if (isNameHidden && (nNode > 1))
-			{
-				out.append("{");
-			}
-			
-			final double progress = actionTask.getCurrentProgress();
-			final double progressWeight = 100.0 / cycleSize / nodeSize;
-			for (int j = 0; j < nodeSize; ++j)
-			{
-				if (actionTask.isCancelled())
-				{
-					return null;
-				}
-				
-				final ParamNode node = nodes.get(j);
-				if (node.getEntityType().isIf())
-				{
-					final Variant variant = vars.get(node.getParamIf());
-					if ((variant != null) && variant.toString().equalsIgnoreCase(node.getValIf()))
-					{
-						final Data dataResult = parseData(actionTask, actionTask.getWeightValue(progressWeight, weight), currentFile, crypter, data, null, node.getSubNodes(), 1, vars, isNameHidden, cycleNameLevel, mass);
-						if (dataResult != null)
-						{
-							out.append(dataResult.data);
-							if (dataResult.error)
-							{
-								result.error = true;
-								break;
-							}
-						}
-					}
-				}
-				else if (node.getEntityType().isElse())
-				{
-					final Variant variant = vars.get(node.getParamIf());
-					if ((variant != null) && !variant.toString().equalsIgnoreCase(node.getValIf()))
-					{
-						final Data dataResult = parseData(actionTask, actionTask.getWeightValue(progressWeight, weight), currentFile, crypter, data, null, node.getSubNodes(), 1, vars, isNameHidden, cycleNameLevel, mass);
-						if (dataResult != null)
-						{
-							out.append(dataResult.data);
-							if (dataResult.error)
-							{
-								result.error = true;
-								break;
-							}
-						}
-					}
-				}
-				else if (node.getEntityType().isMask())
-				{
-					final Variant variant = vars.get(node.getParamMask());
-					if (variant != null)
-					{
-						final int value = Integer.parseInt(variant.toString());
-						if ((value & node.getValMask()) == node.getValMask())
-						{
-							final Data dataResult2 = parseData(actionTask, actionTask.getWeightValue(progressWeight, weight), currentFile, crypter, data, null, node.getSubNodes(), 1, vars, isNameHidden, cycleNameLevel, mass);
-							if (dataResult2 != null)
-							{
-								out.append(dataResult2.data);
-								if (dataResult2.error)
-								{
-									result.error = true;
-									break;
-								}
-							}
-						}
-					}
-				}
-				else
-				{
-					if (!node.isIterator() && !node.getEntityType().isConstant() && !isNameHidden && (node.getEntityType().isWrapper() || node.isNameHidden()))
-					{
-						out.append(TAB).append(node.getName()).append(EQ);
-					}
-					if (node.getEntityType().isWrapper())
-					{
-						final Data dataResult3 = parseData(actionTask, actionTask.getWeightValue(progressWeight, weight), currentFile, crypter, data, null, node.getSubNodes(), 1, vars, true, cycleNameLevel, mass);
-						if (dataResult3 != null)
-						{
-							out.append(dataResult3.data);
-							if (dataResult3.error)
-							{
-								result.error = true;
-								break;
-							}
-						}
-					}
-					else if (node.getEntityType().isCycle())
-					{
-						int size;
-						if (node.getSize() >= 0)
-						{
-							size = node.getSize();
-						}
-						else
-						{
-							final Variant var2 = vars.get(node.getCycleName());
-							if (var2.isInt())
-							{
-								size = var2.getInt();
-							}
-							else
-							{
-								if (!var2.isShort())
-								{
-									throw new Exception("Wrong cycle variable format for cycle: " + node.getName() + " iterator: " + node.getCycleName());
-								}
-								size = var2.getShort();
-							}
-						}
-						if (node.isNameHidden())
-						{
-							out.append("{");
-						}
-						
-						final Data dataResult = parseData(actionTask, actionTask.getWeightValue(progressWeight, weight), currentFile, crypter, data, node, node.getSubNodes(), size, vars, node.isNameHidden(), cycleNameLevel, mass);
-						if (dataResult != null)
-						{
-							out.append(dataResult.data);
-							if (dataResult.error)
-							{
-								result.error = true;
-								break;
-							}
-						}
-						
-						if (node.isNameHidden())
-						{
-							out.append("}");
-						}
-					}
-					else if (node.getEntityType().isConstant())
-					{
-						out.append(node.getName().replace("\\t", TAB).replace("\\r\\n", "\r\n"));
-					}
-					else if (node.getEntityType().isVariable() && !readVariables(currentFile, crypter, node, vars, data, out, false, mass))
-					{
-						if (!mass)
-						{
-							L2ExplorerDat.addLogConsole(String.format("Error while parsing variable NAME[%s] TYPE[%s] in file NAME[%s]! Parsed data: %s", node.getName(), node.getType(), currentFile.getName(), out.toString()), true);
-						}
-						
-						result.error = true;
-						break;
-					}
-					
-					if (!node.isIterator() && !node.getEntityType().isConstant() && isNameHidden && (j != (nodeSize - 1)))
-					{
-						out.append(SEMI);
-					}
-					
-					if (vars.containsKey(node.getName()))
-					{
-						DebugUtil.debugPos(data.position(), node.getName(), vars.get(node.getName()));
-					}
-				}
-				
-				if (actionTask.isCancelled())
-				{
-					return null;
-				}
-				
-				actionTask.addProgress(progress, progressWeight, weight);
-			}
-			if (isNameHidden)
-			{
-				if (nNode > 1)
-				{
-					out.append("}");
-				}
-				if (i < (cycleSize - 1))
-				{
-					out.append(SEMI);
-				}
-			}
-			if (isAddCycleName)
+			final String text = parseData(actionTask, weight, currentFile, crypter, desc, data, mass);
+			if (text == null)
 			{
-				if (out.charAt(out.length() - 1) != '\n')
-				{
-					out.append(TAB);
-				}
-				out.append(lastNode.getName()).append("_end\r\n");
-				--cycleNameLevel;
+				return false;
 			}
 			
-			if (result.error)
-			{
-				break;
-			}
+			writer.write(text);
+			return true;
 		}
-		return result;
-	}
-	
-	private boolean readVariables(File currentFile, DatCrypter crypter, ParamNode node, Map<String, Variant> vars, ByteBuffer data, StringBuilder out, boolean isRaw, boolean mass)
-	{
-		try
+		
+		final double progress = actionTask.getCurrentProgress();
+		final TextSink out = new TextSink(getInitialCapacity(data), writer);
+		final TextRenderer renderer = new TextRenderer(out, currentFile, mass, ConfigDebug.DAT_REPLACEMENT_ENUMS);
+		final PlanReader reader = new PlanReader(desc.getReaderPlan(), data, renderer, actionTask, currentFile, crypter, mass, ConfigDebug.DAT_REPLACEMENT_NAMES);
+		renderer.setReader(reader);
+		final boolean success = reader.readBlock(desc.getReaderPlan().getRoot(), 1, actionTask.getWeightValue(99.0, weight));
+		if (!success)
 		{
-			switch (node.getType())
-			{
-				case UCHAR:
-				{
-					final short value = (byte) ByteReader.readChar(data);
-					if (!node.isIterator())
-					{
-						if (ConfigDebug.DAT_REPLACEMENT_ENUMS && node.isEnum())
-						{
-							out.append(DescriptorParser.getInstance().getEnumNameByIndex(node.getEnumName(), value));
-						}
-						else
-						{
-							out.append(value);
-						}
-					}
-					vars.put(node.getName(), new Variant(value, Short.class));
-					break;
-				}
-				case UBYTE:
-				{
-					final int value = ByteReader.readUByte(data);
-					if (!node.isIterator())
-					{
-						if (ConfigDebug.DAT_REPLACEMENT_ENUMS && node.isEnum())
-						{
-							out.append(DescriptorParser.getInstance().getEnumNameByIndex(node.getEnumName(), value));
-						}
-						else
-						{
-							out.append(value);
-						}
-					}
-					vars.put(node.getName(), new Variant(value, Integer.class));
-					break;
-				}
-				case SHORT:
-				{
-					final short value = ByteReader.readShort(data);
-					if (!node.isIterator())
-					{
-						if (ConfigDebug.DAT_REPLACEMENT_ENUMS && node.isEnum())
-						{
-							out.append(DescriptorParser.getInstance().getEnumNameByIndex(node.getEnumName(), value));
-						}
-						else
-						{
-							out.append(value);
-						}
-					}
-					vars.put(node.getName(), new Variant(value, Short.class));
-					break;
-				}
-				case USHORT:
-				{
-					final int value = ByteReader.readShort(data) & 0xFFFF;
-					if (!node.isIterator())
-					{
-						if (ConfigDebug.DAT_REPLACEMENT_ENUMS && node.isEnum())
-						{
-							out.append(DescriptorParser.getInstance().getEnumNameByIndex(node.getEnumName(), value));
-						}
-						else
-						{
-							out.append(value);
-						}
-					}
-					vars.put(node.getName(), new Variant(value, Integer.class));
-					break;
-				}
-				case UINT:
-				{
-					final int value = ByteReader.readUInt(data);
-					if (!node.isIterator())
-					{
-						if (ConfigDebug.DAT_REPLACEMENT_ENUMS && node.isEnum())
-						{
-							out.append(DescriptorParser.getInstance().getEnumNameByIndex(node.getEnumName(), value));
-						}
-						else
-						{
-							out.append(value);
-						}
-					}
-					vars.put(node.getName(), new Variant(value, Integer.class));
-					break;
-				}
-				case INT:
-				{
-					final int value = ByteReader.readInt(data);
-					if (!node.isIterator())
-					{
-						if (ConfigDebug.DAT_REPLACEMENT_ENUMS && node.isEnum())
-						{
-							out.append(DescriptorParser.getInstance().getEnumNameByIndex(node.getEnumName(), value));
-						}
-						else
-						{
-							out.append(value);
-						}
-					}
-					vars.put(node.getName(), new Variant(value, Integer.class));
-					break;
-				}
-				case CNTR:
-				{
-					final int value = ByteReader.readCompactInt(data);
-					if (!node.isIterator())
-					{
-						if (ConfigDebug.DAT_REPLACEMENT_ENUMS && node.isEnum())
-						{
-							out.append(DescriptorParser.getInstance().getEnumNameByIndex(node.getEnumName(), value));
-						}
-						else
-						{
-							out.append(value);
-						}
-					}
-					vars.put(node.getName(), new Variant(value, Integer.class));
-					break;
-				}
-				case UNICODE:
-				{
-					final String str = ByteReader.readUtfString(data, isRaw);
-					if (!isRaw)
-					{
-						if (!node.isIterator())
-						{
-							out.append(LB);
-							out.append(str);
-							out.append(RB);
-						}
-						vars.put(node.getName(), new Variant(str, String.class));
-						break;
-					}
-					
-					out.append(str);
-					break;
-				}
-				case ASCF:
-				{
-					final String str = ByteReader.readString(data, isRaw);
-					if (!isRaw)
-					{
-						if (!node.isIterator())
-						{
-							out.append(LB);
-							out.append(str);
-							out.append(RB);
-						}
-						vars.put(node.getName(), new Variant(str, String.class));
-						break;
-					}
-					
-					out.append(str);
-					break;
-				}
-				case DOUBLE:
-				{
-					final double value3 = ByteReader.readDouble(data);
-					if (!node.isIterator())
-					{
-						out.append(new BigDecimal(Double.toString(value3)).toPlainString());
-					}
-					vars.put(node.getName(), new Variant(value3, Double.class));
-					break;
-				}
-				case FLOAT:
-				{
-					final float value4 = ByteReader.readFloat(data);
-					if (!node.isIterator())
-					{
-						out.append(value4);
-					}
-					vars.put(node.getName(), new Variant(value4, Float.class));
-					break;
-				}
-				case LONG:
-				{
-					final long value5 = ByteReader.readLong(data);
-					if (!node.isIterator())
-					{
-						out.append(value5);
-					}
-					vars.put(node.getName(), new Variant(value5, Long.class));
-					break;
-				}
-				case RGBA:
-				{
-					final String value6 = ByteReader.readRGBA(data);
-					if (!node.isIterator())
-					{
-						out.append(value6);
-					}
-					vars.put(node.getName(), new Variant(value6, String.class));
-					break;
-				}
-				case RGB:
-				{
-					final String value6 = ByteReader.readRGB(data);
-					if (!node.isIterator())
-					{
-						out.append(value6);
-					}
-					vars.put(node.getName(), new Variant(value6, String.class));
-					break;
-				}
-				case HEX:
-				{
-					final int value2 = ByteReader.readUByte(data);
-					if (!node.isIterator())
-					{
-						String hex = Integer.toHexString(value2).toUpperCase();
-						if (hex.length() == 1)
-						{
-							hex = "0" + hex;
-						}
-						out.append(hex);
-					}
-					vars.put(node.getName(), new Variant(value2, Integer.class));
-					break;
-				}
-				case MAP_INT:
-				{
-					final int index = ByteReader.readUInt(data);
-					if (ConfigDebug.DAT_REPLACEMENT_NAMES)
-					{
-						final String paramName = GameDataName.getInstance().getString(currentFile, crypter, index, mass);
-						if (!node.isIterator())
-						{
-							out.append(paramName);
-						}
-						vars.put(node.getName(), new Variant(paramName, String.class));
-						break;
-					}
-					if (!node.isIterator())
-					{
-						out.append(index);
-					}
-					vars.put(node.getName(), new Variant(index, Integer.class));
-					break;
-				}
-				default:
-				{
-					return false;
-				}
-			}
+			renderer.rollback();
 		}
-		catch (Exception e)
+		out.finish();
+		if (!success || actionTask.isCancelled())
 		{
 			return false;
 		}
 		
+		actionTask.addProgress(progress, 100.0, weight);
+		final int pos = desc.isSafePackage() ? (data.position() + 13) : data.position();
+		if (data.limit() > pos)
+		{
+			if (mass)
+			{
+				return false;
+			}
+			
+			L2ExplorerDat.addLogConsole("Unpacked not full " + data.position() + "/" + data.limit() + " diff: " + (data.limit() - pos), true);
+		}
 		return true;
 	}
 	
-	private static class Data
+	private static int getInitialCapacity(ByteBuffer data)
 	{
-		public final StringBuilder data;
-		public boolean error;
-		
-		protected Data()
-		{
-			data = new StringBuilder();
-			error = false;
-		}
+		return (int) Math.min((long) data.remaining() * TEXT_RATIO, MAX_INITIAL_CAPACITY);
 	}
 	
 	public static DescriptorReader getInstance()
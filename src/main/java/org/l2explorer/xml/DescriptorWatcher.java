@@ -0,0 +1,155 @@
+/*
+ * This file is part of the L2ExplorerDat project.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.l2explorer.xml;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reports the XML files created, modified or deleted in the watched data directories since the last poll.
+ */
+final class DescriptorWatcher
+{
+	private static final Logger LOGGER = Logger.getLogger(DescriptorWatcher.class.getName());
+	
+	private final WatchService _service;
+	private final Map<WatchKey, Path> _dirs = new HashMap<>();
+	
+	private DescriptorWatcher(WatchService service)
+	{
+		_service = service;
+	}
+	
+	/**
+	 * @param dir a directory watched without its sub directories
+	 * @param trees directories watched with all their sub directories
+	 * @return the watcher, or {@code null} if the directories cannot be watched
+	 */
+	static DescriptorWatcher create(String dir, String... trees)
+	{
+		try
+		{
+			final DescriptorWatcher watcher = new DescriptorWatcher(FileSystems.getDefault().newWatchService());
+			watcher.register(Paths.get(dir));
+			for (String tree : trees)
+			{
+				watcher.registerTree(Paths.get(tree));
+			}
+			return watcher;
+		}
+		catch (IOException e)
+		{
+			LOGGER.log(Level.WARNING, "Cannot watch the data directories: " + e.getMessage(), e);
+			return null;
+		}
+	}
+	
+	private void register(Path dir) throws IOException
+	{
+		if (Files.isDirectory(dir))
+		{
+			_dirs.put(dir.register(_service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+		}
+	}
+	
+	private void registerTree(Path root) throws IOException
+	{
+		if (!Files.isDirectory(root))
+		{
+			return;
+		}
+		
+		final List<Path> dirs;
+		try (Stream<Path> stream = Files.walk(root))
+		{
+			dirs = stream.filter(Files::isDirectory).collect(Collectors.toList());
+		}
+		for (Path dir : dirs)
+		{
+			register(dir);
+		}
+	}
+	
+	/**
+	 * Drains the pending events without blocking.
+	 * @return the changed XML files, or {@code null} if events were lost and everything must be reloaded
+	 */
+	Set<File> poll()
+	{
+		final Set<File> changed = new LinkedHashSet<>();
+		boolean lost = false;
+		WatchKey key;
+		while ((key = _service.poll()) != null)
+		{
+			final Path dir = _dirs.get(key);
+			for (WatchEvent<?> event : key.pollEvents())
+			{
+				if ((event.kind() == OVERFLOW) || (dir == null))
+				{
+					lost = true;
+					continue;
+				}
+				
+				final Path path = dir.resolve((Path) event.context());
+				if ((event.kind() == ENTRY_CREATE) && Files.isDirectory(path))
+				{
+					// Files may already be in the directory before it is registered.
+					try
+					{
+						registerTree(path);
+					}
+					catch (IOException e)
+					{
+						LOGGER.log(Level.WARNING, "Cannot watch directory " + path + ": " + e.getMessage(), e);
+					}
+					lost = true;
+				}
+				else if (path.getFileName().toString().endsWith(".xml"))
+				{
+					changed.add(path.toFile().getAbsoluteFile());
+				}
+			}
+			
+			if (!key.reset())
+			{
+				_dirs.remove(key);
+			}
+		}
+		return lost ? null : changed;
+	}
+}
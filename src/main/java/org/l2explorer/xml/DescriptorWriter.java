@@ -16,26 +16,25 @@
  */
 package org.l2explorer.xml;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.l2explorer.actions.ActionTask;
 import org.l2explorer.clientcryptor.crypt.DatCrypter;
 import org.l2explorer.config.ConfigDebug;
 import org.l2explorer.config.ConfigWindow;
 import org.l2explorer.data.GameDataName;
-import org.l2explorer.util.ByteWriter;
+import org.l2explorer.util.ByteEmitter;
 import org.l2explorer.util.Util;
 import org.l2explorer.xml.exceptions.CycleArgumentException;
 import org.l2explorer.xml.exceptions.PackDataException;
@@ -60,10 +59,10 @@ public class DescriptorWriter
 		101,
 		0
 	};
+	private static final int DRAIN_SIZE = 256 * 1024;
 	
 	public static byte[] parseData(ActionTask actionTask, double weight, File currentFile, DatCrypter crypter, Descriptor desc, String data, boolean mass) throws Exception
 	{
-		final ByteArrayOutputStream stream = new ByteArrayOutputStream(data.length() / 2);
 		double progress = actionTask.getCurrentProgress();
 		if ((desc.getFormat() != null) && !ConfigWindow.CURRENT_FORMATTER.equalsIgnoreCase("Disabled"))
 		{
@@ -75,6 +74,8 @@ public class DescriptorWriter
 			
 			progress = actionTask.addProgress(progress, 20.0, weight);
 		}
+		
+		final ByteEmitter out = new ByteEmitter(data.length() / 2);
 		if (desc.isRawData())
 		{
 			if (actionTask.isCancelled())
@@ -83,75 +84,199 @@ public class DescriptorWriter
 			}
 			
 			progress = actionTask.addProgress(progress, 50.0, weight);
-			final byte[] bytes = parseNodeValue(currentFile, crypter, data, desc.getNodes().get(0), true, mass);
-			if (bytes != null)
-			{
-				stream.write(bytes);
-			}
-			else
+			if (!parseNodeValue(currentFile, crypter, data, desc.getNodes().get(0), true, mass, out))
 			{
 				LOGGER.log(Level.WARNING, "Failed to parse raw data.");
 			}
 		}
 		else
 		{
-			final String lines = data.replace("\r\n", "\t");
-			final List<WriteData> writeData = new ArrayList<>();
-			packData(actionTask, actionTask.getWeightValue(30.0, weight), currentFile, crypter, writeData, lines, new HashMap<>(), new HashMap<>(), desc.getNodes(), mass);
+			final TextLexer lexer = new TextLexer(data);
+			final List<WriteIterator> iterators = new ArrayList<>();
+			packData(actionTask, actionTask.getWeightValue(30.0, weight), currentFile, crypter, out, iterators, lexer, 0, lexer.size(), new HashMap<>(), new HashMap<>(), desc.getNodes(), mass);
 			if (actionTask.isCancelled())
 			{
 				return null;
 			}
 			
-			progress = actionTask.addProgress(progress, 30.0, weight);
-			final double progressWeight = actionTask.getWeightValue(40.0, weight);
-			final double progressDiff = 100.0 / writeData.size();
-			
-			final ByteBuffer buffer = ByteBuffer.allocateDirect(data.length() * 2);
-			for (WriteData wr : writeData)
+			for (WriteIterator iterator : iterators)
 			{
-				if (wr.isIterator())
+				if (iterator != null)
 				{
-					LOGGER.log(Level.WARNING, ("Found iterator without writed size: " + wr.getParamNode().getName()));
+					LOGGER.log(Level.WARNING, ("Found iterator without writed size: " + iterator.getParamNode().getName()));
+					out.splice(iterator.getOffset(), iterator.getSize(), null, iterator.getSequence());
 				}
-				else
+			}
+			progress = actionTask.addProgress(progress, 70.0, weight);
+		}
+		
+		actionTask.addProgress(progress, 10.0, weight);
+		
+		if (desc.isSafePackage())
+		{
+			out.writeBytes(DescriptorWriter.END_FILE_BYTES);
+		}
+		
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Packs a text straight into {@code os}, one element of the top level cycles at a time, so neither the whole text nor the whole packed data is held in memory.<br>
+	 * The text is read twice: once to count the elements, since the count comes before them, then to pack them. Elements of each top level cycle must come before those of the next one, otherwise the in-memory {@link #parseData} is needed to gather them.
+	 * @param actionTask the running task
+	 * @param weight the progress weight of this pack
+	 * @param currentFile the packed file
+	 * @param crypter the crypter of the packed file
+	 * @param desc the structure of the file
+	 * @param source the text to pack
+	 * @param os the destination of the packed data
+	 * @param mass {@code true} for a mass pack
+	 * @return {@code false} if the task got cancelled, or if the text has to be packed by {@link #parseData} and nothing was written
+	 * @throws Exception
+	 */
+	public static boolean packData(ActionTask actionTask, double weight, File currentFile, DatCrypter crypter, Descriptor desc, TextSource source, OutputStream os, boolean mass) throws Exception
+	{
+		if (desc.isRawData() || ((desc.getFormat() != null) && !ConfigWindow.CURRENT_FORMATTER.equalsIgnoreCase("Disabled")))
+		{
+			return false;
+		}
+		
+		final List<ParamNode> nodes = desc.getNodes();
+		final Map<String, Integer> cycles = new HashMap<>();
+		for (int i = 0; i < nodes.size(); i++)
+		{
+			final ParamNode node = nodes.get(i);
+			if (node.getEntityType().isCycle() && !node.isNameHidden())
+			{
+				if (cycles.put(node.getName(), i) != null)
 				{
-					buffer.put(wr.getBytes());
-					if (actionTask.isCancelled())
-					{
-						return null;
-					}
-					progress = actionTask.addProgress(progress, progressDiff, progressWeight);
+					return false;
 				}
 			}
-			try
+			else if (hasNamedCycle(node.getSubNodes()))
+			{
+				return false;
+			}
+		}
+		
+		double progress = actionTask.getCurrentProgress();
+		final Set<String> names = cycles.keySet();
+		final int[] counts = new int[nodes.size()];
+		int total = 0;
+		try (TextElementReader reader = new TextElementReader(source.open()))
+		{
+			int last = 0;
+			String name;
+			while ((name = reader.next(names)) != null)
 			{
-				buffer.flip();
-				stream.write(ByteBuffer.allocate(buffer.limit()).put(buffer).array());
-				if (actionTask.isCancelled())
+				final int index = cycles.get(name);
+				if (index < last)
 				{
-					return null;
+					return false;
 				}
+				
+				last = index;
+				counts[index]++;
+				total++;
 			}
-			catch (IOException e)
+		}
+		
+		if (actionTask.isCancelled())
+		{
+			return false;
+		}
+		
+		progress = actionTask.addProgress(progress, 10.0, weight);
+		final double elementWeight = actionTask.getWeightValue(90.0 / Math.max(total, 1), weight);
+		final ByteEmitter out = new ByteEmitter(DRAIN_SIZE * 2);
+		final List<WriteIterator> iterators = new ArrayList<>();
+		final Map<String, String> paramMap = new HashMap<>();
+		final Map<ParamNode, String> mapData = new HashMap<>();
+		final TextLexer empty = new TextLexer("");
+		try (TextElementReader reader = new TextElementReader(source.open()))
+		{
+			for (int i = 0; i < nodes.size(); i++)
 			{
-				LOGGER.log(Level.WARNING, e.getMessage(), e);
+				final ParamNode node = nodes.get(i);
+				if (!node.getEntityType().isCycle() || node.isNameHidden())
+				{
+					packData(null, 0.0, currentFile, crypter, out, iterators, empty, 0, 0, paramMap, mapData, Collections.singletonList(node), mass);
+					continue;
+				}
+				
+				writeSize(currentFile, crypter, out, iterators, 0, node, counts[i], mass);
+				for (int element = 0; element < counts[i]; element++)
+				{
+					reader.next(names);
+					final TextLexer lexer = new TextLexer(reader.getBody().replace("\n", "\r\n"));
+					lexer.putValues(paramMap, 0, lexer.size());
+					packData(null, 0.0, currentFile, crypter, out, iterators, lexer, 0, lexer.size(), paramMap, mapData, node.getSubNodes(), mass);
+					if (actionTask.isCancelled())
+					{
+						return false;
+					}
+					
+					// Reserved sizes are filled in place, the data can only leave once none is left open.
+					if ((out.position() >= DRAIN_SIZE) && isResolved(iterators))
+					{
+						iterators.clear();
+						out.drainTo(os);
+					}
+					progress = actionTask.addProgress(progress, elementWeight, 100.0);
+				}
 			}
 		}
 		
-		actionTask.addProgress(progress, 10.0, weight);
+		for (WriteIterator iterator : iterators)
+		{
+			if (iterator != null)
+			{
+				LOGGER.log(Level.WARNING, ("Found iterator without writed size: " + iterator.getParamNode().getName()));
+				out.splice(iterator.getOffset(), iterator.getSize(), null, iterator.getSequence());
+			}
+		}
 		
 		if (desc.isSafePackage())
 		{
-			stream.write(DescriptorWriter.END_FILE_BYTES);
+			out.writeBytes(DescriptorWriter.END_FILE_BYTES);
+		}
+		out.drainTo(os);
+		return true;
+	}
+	
+	private static boolean hasNamedCycle(List<ParamNode> nodes)
+	{
+		if (nodes == null)
+		{
+			return false;
 		}
 		
-		return stream.toByteArray();
+		for (ParamNode node : nodes)
+		{
+			if ((node.getEntityType().isCycle() && !node.isNameHidden()) || hasNamedCycle(node.getSubNodes()))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static boolean isResolved(List<WriteIterator> iterators)
+	{
+		for (WriteIterator iterator : iterators)
+		{
+			if (iterator != null)
+			{
+				return false;
+			}
+		}
+		return true;
 	}
 	
-	private static void packData(ActionTask actionTask, double weight, File currentFile, DatCrypter crypter, List<WriteData> writeData, String lines, Map<String, String> paramMap, Map<ParamNode, String> mapData, List<ParamNode> nodes, boolean mass) throws Exception
+	private static void packData(ActionTask actionTask, double weight, File currentFile, DatCrypter crypter, ByteEmitter out, List<WriteIterator> iterators, TextLexer lexer, int from, int to, Map<String, String> paramMap, Map<ParamNode, String> mapData, List<ParamNode> nodes, boolean mass) throws Exception
 	{
-		final List<WriteData> subWriteData = new ArrayList<>();
+		// Cycles only take the size iterators written by this call, directly or through the nested calls that already returned.
+		final int scope = iterators.size();
 		for (ParamNode node : nodes)
 		{
 			if ((actionTask != null) && actionTask.isCancelled())
@@ -161,27 +286,24 @@ public class DescriptorWriter
 			
 			if (node.isIterator())
 			{
-				subWriteData.add(new WriteIterator(node));
+				final int size = getFixedSize(node.getType());
+				final int sequence = out.getReserveCount();
+				iterators.add(new WriteIterator(node, sequence, out.reserve(size), size));
 			}
 			else if (node.getEntityType().isCycle())
 			{
 				if (!node.isNameHidden())
 				{
-					final Pattern pattern = Pattern.compile("\\b" + node.getName().concat("_begin\\b(.*?)\\b").concat(node.getName()).concat("_end\\b"), 32);
-					final Matcher m = pattern.matcher(lines);
-					final List<String> list = new ArrayList<>();
-					while (m.find())
-					{
-						list.add(m.group(1));
-					}
+					final int[] elements = lexer.findElements(node.getName(), from, to);
+					final int count = elements.length / 2;
 					
 					final double progress = (actionTask != null) ? actionTask.getCurrentProgress() : 0.0;
-					final double progressWeight = (actionTask != null) ? actionTask.getWeightValue(100.0 / list.size(), weight) : 0.0;
-					writeSize(currentFile, crypter, subWriteData, node, list.size(), mass);
-					for (String str : list)
+					final double progressWeight = (actionTask != null) ? actionTask.getWeightValue(100.0 / count, weight) : 0.0;
+					writeSize(currentFile, crypter, out, iterators, scope, node, count, mass);
+					for (int i = 0; i < elements.length; i += 2)
 					{
-						paramMap.putAll(Util.stringToMap(str));
-						packData(actionTask, progressWeight, currentFile, crypter, subWriteData, str, paramMap, mapData, node.getSubNodes(), mass);
+						lexer.putValues(paramMap, elements[i], elements[i + 1]);
+						packData(actionTask, progressWeight, currentFile, crypter, out, iterators, lexer, elements[i], elements[i + 1], paramMap, mapData, node.getSubNodes(), mass);
 					}
 					
 					if (actionTask == null)
@@ -206,7 +328,7 @@ public class DescriptorWriter
 					
 					if (param.isEmpty() || param.equals("{}"))
 					{
-						writeSize(currentFile, crypter, subWriteData, node, 0, mass);
+						writeSize(currentFile, crypter, out, iterators, scope, node, 0, mass);
 					}
 					else
 					{
@@ -217,7 +339,7 @@ public class DescriptorWriter
 							throw new PackDataException("Wrong static cycle count for cycle: " + node.getName() + " size: " + subParams.size() + " params: " + param + "\r\n-node: " + node + "\r\n\tparam: " + paramMap.get(node.getName()));
 						}
 						
-						writeSize(currentFile, crypter, subWriteData, node, cycleSize, mass);
+						writeSize(currentFile, crypter, out, iterators, scope, node, cycleSize, mass);
 						int nPramNode = 0;
 						int nCycleNode = 0;
 						for (ParamNode n : node.getSubNodes())
@@ -251,7 +373,7 @@ public class DescriptorWriter
 									mapData.put(n2, sub2Params.get(paramIndex++));
 								}
 							}
-							packData(null, 0.0, currentFile, crypter, subWriteData, lines, paramMap, mapData, node.getSubNodes(), mass);
+							packData(null, 0.0, currentFile, crypter, out, iterators, lexer, from, to, paramMap, mapData, node.getSubNodes(), mass);
 						}
 					}
 				}
@@ -278,7 +400,7 @@ public class DescriptorWriter
 						mapData.put(n3, subParams.get(paramIndex2++));
 					}
 				}
-				packData(null, 0.0, currentFile, crypter, subWriteData, lines, paramMap, mapData, node.getSubNodes(), mass);
+				packData(null, 0.0, currentFile, crypter, out, iterators, lexer, from, to, paramMap, mapData, node.getSubNodes(), mass);
 			}
 			else if (node.getEntityType().isVariable())
 			{
@@ -288,13 +410,10 @@ public class DescriptorWriter
 					throw new PackDataException("Not found data for variable: " + node.getName() + "\r\n-node: " + node + "\r\n\tparam: " + paramMap.get(node.getName()));
 				}
 				
-				final byte[] bytes = parseNodeValue(currentFile, crypter, param, node, false, mass);
-				if (bytes == null)
+				if (!parseNodeValue(currentFile, crypter, param, node, false, mass, out))
 				{
 					throw new PackDataException("Node value is null.\r\n-node: " + node + "\r\n\tparam: " + paramMap.get(node.getName()));
 				}
-				
-				subWriteData.add(new WriteBytes(node, bytes));
 			}
 			else if (node.getEntityType().isIf())
 			{
@@ -309,7 +428,7 @@ public class DescriptorWriter
 					continue;
 				}
 				
-				packData(null, 0.0, currentFile, crypter, subWriteData, lines, paramMap, mapData, node.getSubNodes(), mass);
+				packData(null, 0.0, currentFile, crypter, out, iterators, lexer, from, to, paramMap, mapData, node.getSubNodes(), mass);
 			}
 			else if (node.getEntityType().isElse())
 			{
@@ -324,7 +443,7 @@ public class DescriptorWriter
 					continue;
 				}
 				
-				packData(null, 0.0, currentFile, crypter, subWriteData, lines, paramMap, mapData, node.getSubNodes(), mass);
+				packData(null, 0.0, currentFile, crypter, out, iterators, lexer, from, to, paramMap, mapData, node.getSubNodes(), mass);
 			}
 			else
 			{
@@ -345,13 +464,12 @@ public class DescriptorWriter
 					continue;
 				}
 				
-				packData(null, 0.0, currentFile, crypter, subWriteData, lines, paramMap, mapData, node.getSubNodes(), mass);
+				packData(null, 0.0, currentFile, crypter, out, iterators, lexer, from, to, paramMap, mapData, node.getSubNodes(), mass);
 			}
 		}
-		writeData.addAll(subWriteData);
 	}
 	
-	private static byte[] parseNodeValue(File currentFile, DatCrypter crypter, String data, ParamNode node, boolean isRaw, boolean mass)
+	private static boolean parseNodeValue(File currentFile, DatCrypter crypter, String data, ParamNode node, boolean isRaw, boolean mass, ByteEmitter out)
 	{
 		final ParamType nodeType = node.getType();
 		if (nodeType == null)
@@ -360,7 +478,7 @@ public class DescriptorWriter
 			{
 				LOGGER.log(Level.WARNING, ("Incorrect node type for node " + node));
 			}
-			return null;
+			return false;
 		}
 		
 		if (ConfigDebug.DAT_REPLACEMENT_ENUMS && node.isEnum())
@@ -374,68 +492,84 @@ public class DescriptorWriter
 			{
 				case UCHAR:
 				{
-					return ByteWriter.writeUByte(Byte.parseByte(data));
+					out.writeByte(Byte.parseByte(data));
+					return true;
 				}
 				case CNTR:
 				{
-					return ByteWriter.writeCompactInt(Integer.parseInt(data));
+					out.writeCompactInt(Integer.parseInt(data));
+					return true;
 				}
 				case UBYTE:
 				{
-					return ByteWriter.writeUByte(Short.parseShort(data));
+					out.writeByte(Short.parseShort(data));
+					return true;
 				}
 				case SHORT:
 				{
-					return ByteWriter.writeShort(Short.parseShort(data));
+					out.writeShort(Short.parseShort(data));
+					return true;
 				}
 				case USHORT:
 				{
-					return ByteWriter.writeUShort(Integer.parseInt(data));
+					out.writeShort(Integer.parseInt(data));
+					return true;
 				}
 				case UINT:
 				case INT:
 				{
-					return ByteWriter.writeInt(Integer.parseInt(data));
+					out.writeInt(Integer.parseInt(data));
+					return true;
 				}
 				case UNICODE:
 				{
-					return ByteWriter.writeUtfString(isRaw ? data : data.substring(1, data.length() - 1), isRaw);
+					out.writeUtfString(isRaw ? data : data.substring(1, data.length() - 1), isRaw);
+					return true;
 				}
 				case ASCF:
 				{
-					return ByteWriter.writeString(isRaw ? data : data.substring(1, data.length() - 1), isRaw);
+					out.writeString(isRaw ? data : data.substring(1, data.length() - 1), isRaw);
+					return true;
 				}
 				case DOUBLE:
 				{
-					return ByteWriter.writeDouble(Double.parseDouble(data));
+					out.writeDouble(Double.parseDouble(data));
+					return true;
 				}
 				case FLOAT:
 				{
-					return ByteWriter.writeFloat(Float.parseFloat(data));
+					out.writeFloat(Float.parseFloat(data));
+					return true;
 				}
 				case LONG:
 				{
-					return ByteWriter.writeLong(Long.parseLong(data));
+					out.writeLong(Long.parseLong(data));
+					return true;
 				}
 				case RGBA:
 				{
-					return ByteWriter.writeRGBA(data);
+					out.writeRGBA(data);
+					return true;
 				}
 				case RGB:
 				{
-					return ByteWriter.writeRGB(data);
+					out.writeRGB(data);
+					return true;
 				}
 				case HEX:
 				{
-					return ByteWriter.writeByte((byte) (Integer.parseInt(data, 16) & 0xFF));
+					out.writeByte(Integer.parseInt(data, 16) & 0xFF);
+					return true;
 				}
 				case MAP_INT:
 				{
 					if (ConfigDebug.DAT_REPLACEMENT_NAMES)
 					{
-						return ByteWriter.writeInt(GameDataName.getInstance().getId(currentFile, crypter, node, data, mass));
+						out.writeInt(GameDataName.getInstance().getId(currentFile, crypter, node, data, mass));
+						return true;
 					}
-					return ByteWriter.writeInt(Integer.parseInt(data));
+					out.writeInt(Integer.parseInt(data));
+					return true;
 				}
 				default:
 				{
@@ -452,7 +586,50 @@ public class DescriptorWriter
 			}
 		}
 		
-		return null;
+		return false;
+	}
+	
+	/**
+	 * @param type the type of a size iterator
+	 * @return the encoded size of the type, or 0 if it varies with the value
+	 */
+	private static int getFixedSize(ParamType type)
+	{
+		if (type == null)
+		{
+			return 0;
+		}
+		
+		switch (type)
+		{
+			case UCHAR:
+			case UBYTE:
+			case HEX:
+			{
+				return 1;
+			}
+			case SHORT:
+			case USHORT:
+			{
+				return 2;
+			}
+			case UINT:
+			case INT:
+			case FLOAT:
+			case MAP_INT:
+			{
+				return 4;
+			}
+			case DOUBLE:
+			case LONG:
+			{
+				return 8;
+			}
+			default:
+			{
+				return 0;
+			}
+		}
 	}
 	
 	private static String getDataString(ParamNode node, String name, Map<String, String> paramMap, Map<ParamNode, String> mapData)
@@ -464,92 +641,95 @@ public class DescriptorWriter
 		return paramMap.get(name);
 	}
 	
-	private static void writeSize(File currentFile, DatCrypter crypter, List<WriteData> writeData, ParamNode node, int cycleSize, boolean mass) throws CycleArgumentException, PackDataException
+	private static void writeSize(File currentFile, DatCrypter crypter, ByteEmitter out, List<WriteIterator> iterators, int scope, ParamNode node, int cycleSize, boolean mass) throws CycleArgumentException, PackDataException
 	{
 		if (!node.isSkipWriteSize() && (node.getSize() < 0))
 		{
-			WriteData iterator = null;
-			for (int i = writeData.size() - 1; i >= 0; --i)
+			int index = -1;
+			for (int i = iterators.size() - 1; i >= scope; --i)
 			{
-				final WriteData wd = writeData.get(i);
-				if (wd.isIterator() && wd.getParamNode().getName().equals(node.getCycleName()))
+				final WriteIterator wi = iterators.get(i);
+				if ((wi != null) && wi.getParamNode().getName().equals(node.getCycleName()))
 				{
-					iterator = wd;
+					index = i;
 					break;
 				}
 			}
 			
-			if (iterator == null)
+			if (index < 0)
 			{
 				throw new CycleArgumentException("Not found iterator for cycle: " + node.getName());
 			}
 			
-			final int index = writeData.indexOf(iterator);
-			writeData.remove(index);
-			final ParamNode iteratorNode = iterator.getParamNode();
-			final byte[] bytes = parseNodeValue(currentFile, crypter, String.valueOf(cycleSize), iteratorNode, false, mass);
-			if (bytes == null)
+			final WriteIterator iterator = iterators.set(index, null);
+			while ((iterators.size() > scope) && (iterators.get(iterators.size() - 1) == null))
+			{
+				iterators.remove(iterators.size() - 1);
+			}
+			
+			final ByteEmitter value = new ByteEmitter(8);
+			if (!parseNodeValue(currentFile, crypter, String.valueOf(cycleSize), iterator.getParamNode(), false, mass, value))
 			{
 				throw new PackDataException("Cannot write size! Node value is null.\r\n-node: " + node);
 			}
 			
-			writeData.add(index, new WriteBytes(iteratorNode, bytes));
+			final byte[] bytes = value.toByteArray();
+			if (bytes.length == iterator.getSize())
+			{
+				out.put(iterator.getOffset(), bytes);
+			}
+			else
+			{
+				out.splice(iterator.getOffset(), iterator.getSize(), bytes, iterator.getSequence());
+			}
 		}
 	}
 	
-	private static class WriteData
+	/**
+	 * Opens the text to pack, a streamed pack reads it twice.
+	 */
+	@FunctionalInterface
+	public interface TextSource
 	{
-		final ParamNode paramNode;
-		
-		WriteData(ParamNode paramNode)
-		{
-			this.paramNode = paramNode;
-		}
+		Reader open() throws IOException;
+	}
+	
+	/**
+	 * The space reserved for the size of a cycle, written once the cycle is packed.
+	 */
+	private static class WriteIterator
+	{
+		private final ParamNode _paramNode;
+		private final int _sequence;
+		private final int _offset;
+		private final int _size;
 		
-		boolean isIterator()
+		WriteIterator(ParamNode paramNode, int sequence, int offset, int size)
 		{
-			return false;
+			_paramNode = paramNode;
+			_sequence = sequence;
+			_offset = offset;
+			_size = size;
 		}
 		
 		ParamNode getParamNode()
 		{
-			return paramNode;
+			return _paramNode;
 		}
 		
-		byte[] getBytes()
+		int getSequence()
 		{
-			return new byte[0];
+			return _sequence;
 		}
-	}
-	
-	public static class WriteIterator extends WriteData
-	{
-		WriteIterator(ParamNode paramNode)
-		{
-			super(paramNode);
-		}
-		
-		@Override
-		public boolean isIterator()
-		{
-			return true;
-		}
-	}
-	
-	private static class WriteBytes extends WriteData
-	{
-		final byte[] bytes;
 		
-		WriteBytes(ParamNode paramNode, byte[] bytes)
+		int getOffset()
 		{
-			super(paramNode);
-			this.bytes = bytes;
+			return _offset;
 		}
 		
-		@Override
-		public byte[] getBytes()
+		int getSize()
 		{
-			return bytes;
+			return _size;
 		}
 	}
 }
@@ -16,6 +16,9 @@
  */
 package org.l2explorer.xml;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -124,6 +127,69 @@ public class ParamNode
 		return node;
 	}
 	
+	/**
+	 * Writes this node and its sub nodes for the {@link DescriptorCache}.
+	 * @param out the output
+	 * @throws IOException
+	 */
+	void write(DataOutputStream out) throws IOException
+	{
+		DescriptorCache.writeString(out, _name);
+		DescriptorCache.writeString(out, _entityType.name());
+		DescriptorCache.writeString(out, (_type == null) ? null : _type.name());
+		out.writeInt(_size);
+		out.writeBoolean(_hidden);
+		out.writeBoolean(_isIterator);
+		out.writeBoolean(_skipWriteSize);
+		DescriptorCache.writeString(out, _cycleName);
+		DescriptorCache.writeString(out, _enumName);
+		DescriptorCache.writeString(out, _paramIf);
+		DescriptorCache.writeString(out, _valIf);
+		DescriptorCache.writeString(out, _paramMask);
+		out.writeInt(_valMask);
+		out.writeInt((_sub == null) ? -1 : _sub.size());
+		if (_sub != null)
+		{
+			for (ParamNode node : _sub)
+			{
+				node.write(out);
+			}
+		}
+	}
+	
+	/**
+	 * Reads a node written by {@link #write(DataOutputStream)}.
+	 * @param in the input
+	 * @return the node with its sub nodes
+	 */
+	static ParamNode read(ByteBuffer in)
+	{
+		final String name = DescriptorCache.readString(in);
+		final ParamNodeType entityType = ParamNodeType.valueOf(DescriptorCache.readString(in));
+		final String type = DescriptorCache.readString(in);
+		final ParamNode node = new ParamNode(name, entityType, (type == null) ? null : ParamType.valueOf(type));
+		node._size = in.getInt();
+		node._hidden = in.get() != 0;
+		node._isIterator = in.get() != 0;
+		node._skipWriteSize = in.get() != 0;
+		node._cycleName = DescriptorCache.readString(in);
+		node._enumName = DescriptorCache.readString(in);
+		node._paramIf = DescriptorCache.readString(in);
+		node._valIf = DescriptorCache.readString(in);
+		node._paramMask = DescriptorCache.readString(in);
+		node._valMask = in.getInt();
+		final int count = in.getInt();
+		if (count >= 0)
+		{
+			node._sub = new ArrayList<>(count);
+			for (int i = 0; i < count; i++)
+			{
+				node._sub.add(read(in));
+			}
+		}
+		return node;
+	}
+	
 	void addSubNodes(List<ParamNode> n)
 	{
 		if (_sub == null)
@@ -0,0 +1,480 @@
+/*
+ * This file is part of the L2ExplorerDat project.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.l2explorer.xml;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import org.l2explorer.actions.ActionTask;
+import org.l2explorer.clientcryptor.crypt.DatCrypter;
+import org.l2explorer.data.GameDataName;
+import org.l2explorer.util.ByteReader;
+import org.l2explorer.xml.ReaderPlan.Block;
+import org.l2explorer.xml.ReaderPlan.Op;
+
+/**
+ * Runs a {@link ReaderPlan} over a decrypted buffer and reports what it reads to a {@link PlanVisitor}.
+ */
+final class PlanReader
+{
+	private static final int MAX_CYCLE_SIZE = 1000000;
+	/** Blocks covering less than this share of the progress bar do not report progress themselves. */
+	private static final double MIN_PROGRESS_WEIGHT = 1.0;
+	
+	private final ByteBuffer _data;
+	private final VariableSlots _slots;
+	private final PlanVisitor _visitor;
+	private final ActionTask _actionTask;
+	private final File _currentFile;
+	private final DatCrypter _crypter;
+	private final boolean _mass;
+	private final boolean _replaceNames;
+	
+	/**
+	 * @param plan the plan to run
+	 * @param data the decrypted data, switched to little-endian order
+	 * @param visitor the receiver of the read values
+	 * @param actionTask the task used for cancellation and progress, or {@code null}
+	 * @param currentFile the .dat file, used to resolve {@code MAP_INT} names
+	 * @param crypter the crypter of the .dat file, used to resolve {@code MAP_INT} names
+	 * @param mass {@code true} to keep the name lookup quiet
+	 * @param replaceNames {@code true} to report {@code MAP_INT} values as names
+	 */
+	PlanReader(ReaderPlan plan, ByteBuffer data, PlanVisitor visitor, ActionTask actionTask, File currentFile, DatCrypter crypter, boolean mass, boolean replaceNames)
+	{
+		_data = ByteReader.littleEndian(data);
+		_slots = new VariableSlots(plan.getSlotCount());
+		_visitor = visitor;
+		_actionTask = actionTask;
+		_currentFile = currentFile;
+		_crypter = crypter;
+		_mass = mass;
+		_replaceNames = replaceNames;
+	}
+	
+	ByteBuffer getData()
+	{
+		return _data;
+	}
+	
+	VariableSlots getSlots()
+	{
+		return _slots;
+	}
+	
+	/**
+	 * Runs a block {@code size} times.
+	 * @param block the block to run
+	 * @param size the number of iterations
+	 * @param weight the share of the progress bar covered by this block
+	 * @return {@code false} if a variable could not be read or the task was cancelled
+	 * @throws Exception if a cycle size or a cycle variable is invalid
+	 */
+	boolean readBlock(Block block, int size, double weight) throws Exception
+	{
+		final ActionTask actionTask = _actionTask;
+		final boolean trackProgress = (actionTask != null) && (weight >= MIN_PROGRESS_WEIGHT);
+		final double progress = trackProgress ? actionTask.getCurrentProgress() : 0;
+		final double opWeight = (size > 0) ? (weight / size / Math.max(1, block.nested)) : 0;
+		for (int i = 0; i < size; ++i)
+		{
+			if ((actionTask != null) && actionTask.isCancelled())
+			{
+				return false;
+			}
+			
+			if (!readIteration(block, i, size, opWeight))
+			{
+				return false;
+			}
+			
+			if (trackProgress)
+			{
+				actionTask.addProgress(progress, (100.0 * (i + 1)) / size, weight);
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Runs one iteration of a block.
+	 * @param block the block to run
+	 * @param index the iteration index
+	 * @param size the number of iterations
+	 * @param weight the share of the progress bar covered by each nested block
+	 * @return {@code false} if a variable could not be read or the task was cancelled
+	 * @throws Exception if a cycle size or a cycle variable is invalid
+	 */
+	boolean readIteration(Block block, int index, int size, double weight) throws Exception
+	{
+		_visitor.beginIteration(block, index);
+		boolean success = true;
+		for (Op op : block.ops)
+		{
+			if (!readOp(op, weight))
+			{
+				success = false;
+				break;
+			}
+		}
+		_visitor.endIteration(block, index, size, success);
+		return success;
+	}
+	
+	boolean readOp(Op op, double weight) throws Exception
+	{
+		final PlanVisitor visitor = _visitor;
+		switch (op.kind)
+		{
+			case IF:
+			{
+				final VariableSlots slots = _slots;
+				return !slots.isSet(op.condSlot) || !slots.matches(op.condSlot, op.condValue, op.condNumber, op.condNumeric) || readBlock(op.body, 1, weight);
+			}
+			case ELSE:
+			{
+				final VariableSlots slots = _slots;
+				return !slots.isSet(op.condSlot) || slots.matches(op.condSlot, op.condValue, op.condNumber, op.condNumeric) || readBlock(op.body, 1, weight);
+			}
+			case MASK:
+			{
+				final VariableSlots slots = _slots;
+				return !slots.isSet(op.condSlot) || ((slots.getMask(op.condSlot) & op.mask) != op.mask) || readBlock(op.body, 1, weight);
+			}
+			case WRAPPER:
+			{
+				visitor.beginNode(op);
+				if (!readBlock(op.body, 1, weight))
+				{
+					return false;
+				}
+				break;
+			}
+			case FOR:
+			{
+				visitor.beginNode(op);
+				final int size = getCycleSize(op);
+				visitor.beginCycle(op, size);
+				if (!readBlock(op.body, size, weight))
+				{
+					return false;
+				}
+				visitor.endCycle(op, size);
+				break;
+			}
+			case CONSTANT:
+			{
+				visitor.constant(op);
+				return true;
+			}
+			case VARIABLE:
+			{
+				visitor.beginNode(op);
+				final boolean read = ((op.slot >= 0) || visitor.wantsValue(op)) ? readVariable(op, false) : skipVariable(op);
+				if (!read)
+				{
+					visitor.readError(op);
+					return false;
+				}
+				break;
+			}
+		}
+		
+		visitor.endNode(op);
+		return true;
+	}
+	
+	/**
+	 * @param op a cycle
+	 * @return the number of elements of the cycle
+	 * @throws Exception if the cycle variable is missing or invalid, or the size is too large
+	 */
+	int getCycleSize(Op op) throws Exception
+	{
+		int size = op.size;
+		if (size < 0)
+		{
+			final VariableSlots slots = _slots;
+			if (!slots.isSet(op.sizeSlot))
+			{
+				throw new Exception("Cycle variable not found for cycle: " + op.name + " iterator: " + op.cycleName);
+			}
+			
+			if (!slots.isSize(op.sizeSlot))
+			{
+				throw new Exception("Wrong cycle variable format for cycle: " + op.name + " iterator: " + op.cycleName);
+			}
+			size = slots.getSize(op.sizeSlot);
+		}
+		
+		if (size > MAX_CYCLE_SIZE)
+		{
+			throw new Exception("To much data.");
+		}
+		return size;
+	}
+	
+	boolean readVariable(Op op, boolean isRaw)
+	{
+		final ByteBuffer data = _data;
+		final VariableSlots slots = _slots;
+		final PlanVisitor visitor = _visitor;
+		try
+		{
+			switch (op.type)
+			{
+				case UCHAR:
+				{
+					final short value = (byte) ByteReader.readChar(data);
+					visitor.intValue(op, value);
+					if (op.slot >= 0)
+					{
+						slots.setLong(op.slot, VariableSlots.SHORT, value);
+					}
+					break;
+				}
+				case SHORT:
+				{
+					final short value = ByteReader.readShort(data);
+					visitor.intValue(op, value);
+					if (op.slot >= 0)
+					{
+						slots.setLong(op.slot, VariableSlots.SHORT, value);
+					}
+					break;
+				}
+				case UBYTE:
+				case HEX:
+				{
+					final int value = ByteReader.readUByte(data);
+					visitor.intValue(op, value);
+					if (op.slot >= 0)
+					{
+						slots.setLong(op.slot, VariableSlots.INT, value);
+					}
+					break;
+				}
+				case USHORT:
+				{
+					final int value = ByteReader.readShort(data) & 0xFFFF;
+					visitor.intValue(op, value);
+					if (op.slot >= 0)
+					{
+						slots.setLong(op.slot, VariableSlots.INT, value);
+					}
+					break;
+				}
+				case UINT:
+				case INT:
+				{
+					final int value = ByteReader.readInt(data);
+					visitor.intValue(op, value);
+					if (op.slot >= 0)
+					{
+						slots.setLong(op.slot, VariableSlots.INT, value);
+					}
+					break;
+				}
+				case CNTR:
+				{
+					final int value = ByteReader.readCompactInt(data);
+					visitor.intValue(op, value);
+					if (op.slot >= 0)
+					{
+						slots.setLong(op.slot, VariableSlots.INT, value);
+					}
+					break;
+				}
+				case LONG:
+				{
+					final long value = ByteReader.readLong(data);
+					visitor.intValue(op, value);
+					if (op.slot >= 0)
+					{
+						slots.setLong(op.slot, VariableSlots.LONG, value);
+					}
+					break;
+				}
+				case FLOAT:
+				{
+					final float value = ByteReader.readFloat(data);
+					visitor.floatValue(op, value);
+					if (op.slot >= 0)
+					{
+						slots.setDouble(op.slot, VariableSlots.FLOAT, value);
+					}
+					break;
+				}
+				case DOUBLE:
+				{
+					final double value = ByteReader.readDouble(data);
+					visitor.doubleValue(op, value);
+					if (op.slot >= 0)
+					{
+						slots.setDouble(op.slot, VariableSlots.DOUBLE, value);
+					}
+					break;
+				}
+				case UNICODE:
+				{
+					final String str = ByteReader.readUtfString(data, isRaw);
+					visitor.stringValue(op, str, isRaw);
+					if (!isRaw && (op.slot >= 0))
+					{
+						slots.setString(op.slot, str);
+					}
+					break;
+				}
+				case ASCF:
+				{
+					final String str = ByteReader.readString(data, isRaw);
+					visitor.stringValue(op, str, isRaw);
+					if (!isRaw && (op.slot >= 0))
+					{
+						slots.setString(op.slot, str);
+					}
+					break;
+				}
+				case RGBA:
+				{
+					final String value = ByteReader.readRGBA(data);
+					visitor.stringValue(op, value, false);
+					if (op.slot >= 0)
+					{
+						slots.setString(op.slot, value);
+					}
+					break;
+				}
+				case RGB:
+				{
+					final String value = ByteReader.readRGB(data);
+					visitor.stringValue(op, value, false);
+					if (op.slot >= 0)
+					{
+						slots.setString(op.slot, value);
+					}
+					break;
+				}
+				case MAP_INT:
+				{
+					final int index = ByteReader.readUInt(data);
+					if (_replaceNames)
+					{
+						final String paramName = GameDataName.getInstance().getString(_currentFile, _crypter, index, _mass);
+						visitor.stringValue(op, paramName, false);
+						if (op.slot >= 0)
+						{
+							slots.setString(op.slot, paramName);
+						}
+						break;
+					}
+					
+					visitor.intValue(op, index);
+					if (op.slot >= 0)
+					{
+						slots.setLong(op.slot, VariableSlots.INT, index);
+					}
+					break;
+				}
+				default:
+				{
+					return false;
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Steps over the value of a variable, the same bytes {@link #readVariable(Op, boolean)} would read.
+	 * @param op the variable
+	 * @return {@code false} if the value could not be stepped over
+	 */
+	boolean skipVariable(Op op)
+	{
+		final ByteBuffer data = _data;
+		try
+		{
+			switch (op.type)
+			{
+				case UCHAR:
+				case UBYTE:
+				case HEX:
+				{
+					ByteReader.skip(data, 1);
+					break;
+				}
+				case SHORT:
+				case USHORT:
+				{
+					ByteReader.skip(data, 2);
+					break;
+				}
+				case RGB:
+				{
+					ByteReader.skip(data, 3);
+					break;
+				}
+				case UINT:
+				case INT:
+				case FLOAT:
+				case RGBA:
+				case MAP_INT:
+				{
+					ByteReader.skip(data, 4);
+					break;
+				}
+				case LONG:
+				case DOUBLE:
+				{
+					ByteReader.skip(data, 8);
+					break;
+				}
+				case CNTR:
+				{
+					ByteReader.readCompactInt(data);
+					break;
+				}
+				case UNICODE:
+				{
+					ByteReader.skipUtfString(data);
+					break;
+				}
+				case ASCF:
+				{
+					ByteReader.skipString(data);
+					break;
+				}
+				default:
+				{
+					return false;
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			return false;
+		}
+		
+		return true;
+	}
+}
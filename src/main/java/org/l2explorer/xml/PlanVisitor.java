@@ -0,0 +1,87 @@
+/*
+ * This file is part of the L2ExplorerDat project.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.l2explorer.xml;
+
+import java.io.IOException;
+
+import org.l2explorer.xml.ReaderPlan.Block;
+import org.l2explorer.xml.ReaderPlan.Op;
+
+/**
+ * Receives the structure and the typed values read by a {@link PlanReader}.
+ */
+interface PlanVisitor
+{
+	/**
+	 * Called before each run of a block: once per cycle element, once for other blocks.
+	 * @param block the block
+	 * @param index the iteration index
+	 */
+	void beginIteration(Block block, int index);
+	
+	/**
+	 * Called after each run of a block, even if a value inside it could not be read.
+	 * @param block the block
+	 * @param index the iteration index
+	 * @param size the number of iterations
+	 * @param success {@code false} if the run stopped on a value that could not be read
+	 * @throws IOException if the values cannot be written out
+	 */
+	void endIteration(Block block, int index, int size, boolean success) throws IOException;
+	
+	/**
+	 * Called before a wrapper, cycle or variable.
+	 * @param op the operation
+	 */
+	void beginNode(Op op);
+	
+	/**
+	 * Called after a wrapper, cycle or variable was read successfully.
+	 * @param op the operation
+	 */
+	void endNode(Op op);
+	
+	void beginCycle(Op op, int size);
+	
+	void endCycle(Op op, int size);
+	
+	void constant(Op op);
+	
+	void intValue(Op op, long value);
+	
+	void floatValue(Op op, float value);
+	
+	void doubleValue(Op op, double value);
+	
+	void stringValue(Op op, String value, boolean isRaw);
+	
+	/**
+	 * Asked before reading a variable that no cycle or condition refers to.
+	 * @param op the variable
+	 * @return {@code false} to step over the value without decoding or reporting it
+	 */
+	default boolean wantsValue(Op op)
+	{
+		return true;
+	}
+	
+	/**
+	 * Called when the value of a variable could not be read, before the reader gives up.
+	 * @param op the variable
+	 */
+	void readError(Op op);
+}
@@ -0,0 +1,311 @@
+/*
+ * This file is part of the L2ExplorerDat project.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.l2explorer.xml;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Flat, pre-resolved form of a {@link Descriptor} executed by {@link PlanReader}.<br>
+ * Everything that only depends on the structure (node kinds, name prefixes, separators, cycle headers, enum tables) is resolved once here, and variables are addressed by slot index instead of by name.
+ */
+final class ReaderPlan
+{
+	private static final String TAB = "\t";
+	
+	private final Block _root;
+	private final Map<String, Integer> _slots;
+	
+	private ReaderPlan(List<ParamNode> nodes)
+	{
+		final Map<String, Integer> slots = new HashMap<>();
+		collectReferences(nodes, slots);
+		_slots = slots;
+		_root = compileBlock(nodes, false, null, 0);
+	}
+	
+	static ReaderPlan compile(List<ParamNode> nodes)
+	{
+		return new ReaderPlan(nodes);
+	}
+	
+	Block getRoot()
+	{
+		return _root;
+	}
+	
+	int getSlotCount()
+	{
+		return _slots.size();
+	}
+	
+	/**
+	 * Gives a slot to every name read back while parsing: cycle sizes, {@code if} and {@code mask} parameters.<br>
+	 * Values of other variables are never stored.
+	 * @param nodes the nodes to scan
+	 * @param slots the slot index by variable name
+	 */
+	private static void collectReferences(List<ParamNode> nodes, Map<String, Integer> slots)
+	{
+		if (nodes == null)
+		{
+			return;
+		}
+		
+		for (ParamNode node : nodes)
+		{
+			final String name;
+			switch (node.getEntityType())
+			{
+				case FOR:
+				{
+					name = (node.getSize() < 0) ? node.getCycleName() : null;
+					break;
+				}
+				case IF:
+				case ELSE:
+				{
+					name = node.getParamIf();
+					break;
+				}
+				case MASK:
+				{
+					name = node.getParamMask();
+					break;
+				}
+				default:
+				{
+					name = null;
+					break;
+				}
+			}
+			
+			if (name != null)
+			{
+				slots.putIfAbsent(name, slots.size());
+			}
+			collectReferences(node.getSubNodes(), slots);
+		}
+	}
+	
+	private int getSlot(String name)
+	{
+		final Integer slot = (name != null) ? _slots.get(name) : null;
+		return (slot != null) ? slot : -1;
+	}
+	
+	/**
+	 * @param nodes the nodes of the block
+	 * @param hidden {@code true} if the block is rendered as a hidden {a;b;c} group
+	 * @param owner the operation owning this block, or {@code null} for the root
+	 * @param level the number of enclosing cycles that print their name
+	 * @return the compiled block
+	 */
+	private Block compileBlock(List<ParamNode> nodes, boolean hidden, Op owner, int level)
+	{
+		final List<ParamNode> list = (nodes != null) ? nodes : Collections.emptyList();
+		final boolean addCycleName = !hidden && (owner != null) && (owner.kind == ParamNodeType.FOR);
+		final int innerLevel = addCycleName ? (level + 1) : level;
+		final Op[] ops = new Op[list.size()];
+		int visible = 0;
+		int nested = 0;
+		for (int i = 0; i < ops.length; ++i)
+		{
+			final ParamNode node = list.get(i);
+			if (!node.isIterator())
+			{
+				++visible;
+			}
+			
+			ops[i] = compileOp(node, hidden, i == (ops.length - 1), innerLevel);
+			if (ops[i].body != null)
+			{
+				++nested;
+			}
+		}
+		
+		String begin = null;
+		String end = null;
+		if (addCycleName)
+		{
+			begin = TAB.repeat(level).concat(owner.name).concat("_begin");
+			end = owner.name.concat("_end\r\n");
+		}
+		return new Block(owner, ops, hidden, hidden && (visible > 1), begin, end, nested);
+	}
+	
+	private Op compileOp(ParamNode node, boolean hidden, boolean last, int level)
+	{
+		final ParamNodeType kind = node.getEntityType();
+		final Op op = new Op(kind, node.getType(), node.getName());
+		op.slot = kind.isVariable() ? getSlot(node.getName()) : -1;
+		op.iterator = node.isIterator();
+		if (node.isEnum())
+		{
+			op.enumName = node.getEnumName();
+			op.enumTable = DescriptorParser.getInstance().getEnumTable(op.enumName);
+		}
+		
+		switch (kind)
+		{
+			case IF:
+			case ELSE:
+			{
+				op.condSlot = getSlot(node.getParamIf());
+				op.condValue = node.getValIf();
+				try
+				{
+					op.condNumber = Long.parseLong(op.condValue);
+					op.condNumeric = Long.toString(op.condNumber).equals(op.condValue);
+				}
+				catch (NumberFormatException e)
+				{
+					op.condNumeric = false;
+				}
+				op.body = compileBlock(node.getSubNodes(), hidden, op, level);
+				return op;
+			}
+			case MASK:
+			{
+				op.condSlot = getSlot(node.getParamMask());
+				op.mask = node.getValMask();
+				op.body = compileBlock(node.getSubNodes(), hidden, op, level);
+				return op;
+			}
+			case WRAPPER:
+			{
+				op.body = compileBlock(node.getSubNodes(), true, op, level);
+				break;
+			}
+			case FOR:
+			{
+				op.size = node.getSize();
+				op.sizeSlot = getSlot(node.getCycleName());
+				op.cycleName = node.getCycleName();
+				op.braces = node.isNameHidden();
+				op.body = compileBlock(node.getSubNodes(), node.isNameHidden(), op, level);
+				break;
+			}
+			case CONSTANT:
+			{
+				op.text = node.getName().replace("\\t", TAB).replace("\\r\\n", "\r\n");
+				break;
+			}
+			default:
+			{
+				break;
+			}
+		}
+		
+		if (!op.iterator && !kind.isConstant())
+		{
+			if (!hidden && (kind.isWrapper() || node.isNameHidden()))
+			{
+				op.prefix = TAB.concat(node.getName()).concat("=");
+			}
+			op.separator = hidden && !last;
+		}
+		return op;
+	}
+	
+	/**
+	 * A list of operations executed once per cycle iteration.
+	 */
+	static final class Block
+	{
+		/** The operation running this block, or {@code null} for the root. */
+		final Op owner;
+		final Op[] ops;
+		/** {@code true} if the values are rendered as a hidden group separated by ';'. */
+		final boolean hidden;
+		/** {@code true} if each iteration is wrapped into '{' and '}'. */
+		final boolean braces;
+		/** The "name_begin" header of a named cycle, already indented, or {@code null}. */
+		final String begin;
+		/** The "name_end" footer of a named cycle, or {@code null}. */
+		final String end;
+		/** The number of operations owning a nested block, used to split the progress weight. */
+		final int nested;
+		
+		Block(Op owner, Op[] ops, boolean hidden, boolean braces, String begin, String end, int nested)
+		{
+			this.owner = owner;
+			this.ops = ops;
+			this.hidden = hidden;
+			this.braces = braces;
+			this.begin = begin;
+			this.end = end;
+			this.nested = nested;
+		}
+	}
+	
+	/**
+	 * A single compiled {@link ParamNode}.
+	 */
+	static final class Op
+	{
+		final ParamNodeType kind;
+		final ParamType type;
+		final String name;
+		/** The slot the value is stored into, or -1 if nothing reads it back. */
+		int slot = -1;
+		boolean iterator;
+		String enumName;
+		Map<Integer, String> enumTable;
+		/** The "\tname=" text written before the value, or {@code null}. */
+		String prefix;
+		/** {@code true} if a ';' is written after the value. */
+		boolean separator;
+		/** The text of a constant node. */
+		String text;
+		Block body;
+		int size = -1;
+		int sizeSlot = -1;
+		String cycleName;
+		boolean braces;
+		int condSlot = -1;
+		String condValue;
+		long condNumber;
+		/** {@code true} if {@link #condValue} is the canonical decimal form of {@link #condNumber}. */
+		boolean condNumeric;
+		int mask;
+		
+		Op(ParamNodeType kind, ParamType type, String name)
+		{
+			this.kind = kind;
+			this.type = type;
+			this.name = name;
+		}
+		
+		String getEnumName(int index)
+		{
+			if (enumTable != null)
+			{
+				final String result = enumTable.get(index);
+				if (result != null)
+				{
+					return result;
+				}
+			}
+			
+			// Let the parser log the missing value.
+			return DescriptorParser.getInstance().getEnumNameByIndex(enumName, index);
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * This file is part of the L2ExplorerDat project.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.l2explorer.xml;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import org.l2explorer.xml.ReaderPlan.Block;
+import org.l2explorer.xml.ReaderPlan.Op;
+
+/**
+ * Collects the values read by a {@link PlanReader} into {@link DatRecord}s.
+ */
+final class RecordBuilder implements PlanVisitor
+{
+	private final Deque<DatRecord> _records = new ArrayDeque<>();
+	private final Deque<List<DatRecord>> _cycles = new ArrayDeque<>();
+	private DatRecord _element;
+	private Op _errorOp;
+	
+	RecordBuilder(DatRecord header)
+	{
+		_records.push(header);
+	}
+	
+	/**
+	 * @return the last element completed outside of any cycle started through this builder, then forgets it
+	 */
+	DatRecord takeElement()
+	{
+		final DatRecord element = _element;
+		_element = null;
+		return element;
+	}
+	
+	/**
+	 * @return the variable whose value could not be read, or {@code null}
+	 */
+	Op getErrorOp()
+	{
+		return _errorOp;
+	}
+	
+	private static boolean isElement(Block block)
+	{
+		return (block.owner != null) && (block.owner.kind == ParamNodeType.FOR);
+	}
+	
+	@Override
+	public void beginIteration(Block block, int index)
+	{
+		if (isElement(block))
+		{
+			_records.push(new DatRecord(block.owner.name));
+		}
+	}
+	
+	@Override
+	public void endIteration(Block block, int index, int size, boolean success)
+	{
+		if (isElement(block))
+		{
+			final DatRecord element = _records.pop();
+			if (_cycles.isEmpty())
+			{
+				_element = element;
+			}
+			else
+			{
+				_cycles.peek().add(element);
+			}
+		}
+	}
+	
+	@Override
+	public void beginNode(Op op)
+	{
+		if (op.kind == ParamNodeType.WRAPPER)
+		{
+			_records.push(new DatRecord(op.name));
+		}
+	}
+	
+	@Override
+	public void endNode(Op op)
+	{
+		if (op.kind == ParamNodeType.WRAPPER)
+		{
+			final DatRecord wrapper = _records.pop();
+			_records.peek().addObject(op.name, null, wrapper);
+		}
+	}
+	
+	@Override
+	public void beginCycle(Op op, int size)
+	{
+		final List<DatRecord> elements = new ArrayList<>(Math.max(size, 0));
+		_records.peek().addObject(op.name, null, elements);
+		_cycles.push(elements);
+	}
+	
+	@Override
+	public void endCycle(Op op, int size)
+	{
+		_cycles.pop();
+	}
+	
+	@Override
+	public void constant(Op op)
+	{
+	}
+	
+	@Override
+	public void intValue(Op op, long value)
+	{
+		_records.peek().addLong(op.name, op.type, value);
+	}
+	
+	@Override
+	public void floatValue(Op op, float value)
+	{
+		_records.peek().addDouble(op.name, op.type, value);
+	}
+	
+	@Override
+	public void doubleValue(Op op, double value)
+	{
+		_records.peek().addDouble(op.name, op.type, value);
+	}
+	
+	@Override
+	public void stringValue(Op op, String value, boolean isRaw)
+	{
+		_records.peek().addObject(op.name, op.type, value);
+	}
+	
+	@Override
+	public void readError(Op op)
+	{
+		_errorOp = op;
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * This file is part of the L2ExplorerDat project.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.l2explorer.xml;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import org.l2explorer.clientcryptor.crypt.DatCrypter;
+import org.l2explorer.xml.ReaderPlan.Op;
+import org.l2explorer.xml.exceptions.UnpackDataException;
+
+/**
+ * Streams the elements of a decrypted .dat buffer as typed {@link DatRecord}s, without rendering any text.<br>
+ * Each call to {@link #next()} decodes one element of a top-level cycle. Fields outside of the top-level cycles are collected into {@link #getHeader()} as they are reached.
+ * 
+ * <pre>
+ * final RecordCursor cursor = new RecordCursor(desc, buffer);
+ * while (cursor.next())
+ * {
+ * 	final DatRecord skill = cursor.getRecord();
+ * 	skill.getInt("skill_id");
+ * }
+ * </pre>
+ */
+public class RecordCursor
+{
+	private final Descriptor _desc;
+	private final PlanReader _reader;
+	private final RecordBuilder _builder;
+	private final DatRecord _header = new DatRecord(null);
+	private final Op[] _ops;
+	private int _opIndex;
+	private Op _cycle;
+	private int _cycleSize;
+	private int _cycleIndex;
+	private DatRecord _record;
+	
+	/**
+	 * Creates a cursor reporting {@code MAP_INT} fields as indexes.
+	 * @param desc the descriptor of the file
+	 * @param data the decrypted data, positioned at the first element
+	 */
+	public RecordCursor(Descriptor desc, ByteBuffer data)
+	{
+		this(desc, data, null, null);
+	}
+	
+	/**
+	 * @param desc the descriptor of the file
+	 * @param data the decrypted data, positioned at the first element
+	 * @param currentFile the .dat file, used to resolve {@code MAP_INT} fields through L2GameDataName; {@code null} to report them as indexes
+	 * @param crypter the crypter of the .dat file
+	 */
+	public RecordCursor(Descriptor desc, ByteBuffer data, File currentFile, DatCrypter crypter)
+	{
+		final ReaderPlan plan = desc.getReaderPlan();
+		_desc = desc;
+		_builder = new RecordBuilder(_header);
+		_reader = new PlanReader(plan, data, _builder, null, currentFile, crypter, true, currentFile != null);
+		_ops = plan.getRoot().ops;
+	}
+	
+	/**
+	 * Decodes the next element of a top-level cycle.
+	 * @return {@code false} once the end of the descriptor is reached
+	 * @throws UnpackDataException if the data does not match the descriptor
+	 */
+	public boolean next() throws UnpackDataException
+	{
+		_record = null;
+		try
+		{
+			if (_desc.isRawData())
+			{
+				if (_opIndex == 0)
+				{
+					_opIndex = _ops.length;
+					if (!_reader.readVariable(_ops[0], true))
+					{
+						throw error(_ops[0]);
+					}
+				}
+				return false;
+			}
+			
+			while (true)
+			{
+				if (_cycle != null)
+				{
+					if (_cycleIndex < _cycleSize)
+					{
+						if (!_reader.readIteration(_cycle.body, _cycleIndex, _cycleSize, 0))
+						{
+							throw error(_builder.getErrorOp());
+						}
+						
+						++_cycleIndex;
+						_record = _builder.takeElement();
+						return true;
+					}
+					_cycle = null;
+				}
+				
+				if (_opIndex >= _ops.length)
+				{
+					return false;
+				}
+				
+				final Op op = _ops[_opIndex++];
+				if (op.kind == ParamNodeType.FOR)
+				{
+					_cycleSize = _reader.getCycleSize(op);
+					_cycleIndex = 0;
+					_cycle = op;
+				}
+				else if (!_reader.readOp(op, 0))
+				{
+					throw error(_builder.getErrorOp());
+				}
+			}
+		}
+		catch (UnpackDataException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new UnpackDataException(e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * @return the element decoded by the last successful {@link #next()}, or {@code null}
+	 */
+	public DatRecord getRecord()
+	{
+		return _record;
+	}
+	
+	/**
+	 * @return the fields read so far outside of the top-level cycles
+	 */
+	public DatRecord getHeader()
+	{
+		return _header;
+	}
+	
+	/**
+	 * @return the current position in the data
+	 */
+	public int getPosition()
+	{
+		return _reader.getData().position();
+	}
+	
+	private UnpackDataException error(Op op)
+	{
+		if (op == null)
+		{
+			return new UnpackDataException("Error while parsing data at position " + getPosition());
+		}
+		return new UnpackDataException(String.format("Error while parsing variable NAME[%s] TYPE[%s] at position %d", op.name, op.type, getPosition()));
+	}
+}
@@ -0,0 +1,404 @@
+/*
+ * This file is part of the L2ExplorerDat project.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.l2explorer.xml;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.l2explorer.clientcryptor.crypt.DatCrypter;
+import org.l2explorer.xml.ReaderPlan.Block;
+import org.l2explorer.xml.ReaderPlan.Op;
+import org.l2explorer.xml.exceptions.UnpackDataException;
+
+/**
+ * Random access to the elements of the top-level cycles of a decrypted .dat buffer.<br>
+ * The constructor runs one pass that only keeps the byte range of each element and its first value that is not a cycle size (the id field for item, skill and npc tables). The other values are stepped over unless a cycle or condition needs them. Elements are decoded into {@link DatRecord}s only when they are requested.
+ * 
+ * <pre>
+ * final RecordIndex index = new RecordIndex(desc, buffer, file, crypter);
+ * for (DatRecord level : index.find(skillId))
+ * {
+ * 	level.getInt("skill_level");
+ * }
+ * </pre>
+ */
+public class RecordIndex
+{
+	private static final int INITIAL_CAPACITY = 1024;
+	
+	private final ReaderPlan _plan;
+	private final ByteBuffer _data;
+	private final File _currentFile;
+	private final DatCrypter _crypter;
+	private final List<Cycle> _cycles = new ArrayList<>();
+	/** First and last element of each key, the elements in between are chained through {@link #_next}. */
+	private final Map<Object, int[]> _keys = new HashMap<>();
+	private int[] _starts = new int[INITIAL_CAPACITY];
+	private int[] _ends = new int[INITIAL_CAPACITY];
+	private int[] _elementCycles = new int[INITIAL_CAPACITY];
+	private int[] _next = new int[INITIAL_CAPACITY];
+	private int _size;
+	
+	/**
+	 * Indexes the elements, reporting {@code MAP_INT} fields as indexes.
+	 * @param desc the descriptor of the file
+	 * @param data the decrypted data, positioned at the first element
+	 * @throws UnpackDataException if the data does not match the descriptor
+	 */
+	public RecordIndex(Descriptor desc, ByteBuffer data) throws UnpackDataException
+	{
+		this(desc, data, null, null);
+	}
+	
+	/**
+	 * Indexes the elements. The buffer is shared but its position is left untouched.
+	 * @param desc the descriptor of the file
+	 * @param data the decrypted data, positioned at the first element
+	 * @param currentFile the .dat file, used to resolve {@code MAP_INT} fields through L2GameDataName; {@code null} to report them as indexes
+	 * @param crypter the crypter of the .dat file
+	 * @throws UnpackDataException if the data does not match the descriptor
+	 */
+	public RecordIndex(Descriptor desc, ByteBuffer data, File currentFile, DatCrypter crypter) throws UnpackDataException
+	{
+		_plan = desc.getReaderPlan();
+		_data = data.duplicate();
+		_currentFile = currentFile;
+		_crypter = crypter;
+		if (!desc.isRawData())
+		{
+			build();
+		}
+	}
+	
+	private void build() throws UnpackDataException
+	{
+		final ByteBuffer data = _data.duplicate();
+		final KeyCollector collector = new KeyCollector();
+		final PlanReader reader = new PlanReader(_plan, data, collector, null, _currentFile, _crypter, true, _currentFile != null);
+		try
+		{
+			for (Op op : _plan.getRoot().ops)
+			{
+				if (op.kind != ParamNodeType.FOR)
+				{
+					if (!reader.readOp(op, 0))
+					{
+						throw error(collector._errorOp, data.position());
+					}
+					continue;
+				}
+				
+				final int size = reader.getCycleSize(op);
+				_cycles.add(new Cycle(op, size, _size, reader.getSlots().copy()));
+				for (int i = 0; i < size; ++i)
+				{
+					final int start = data.position();
+					collector._key = null;
+					if (!reader.readIteration(op.body, i, size, 0))
+					{
+						throw error(collector._errorOp, data.position());
+					}
+					add(collector._key, start, data.position());
+				}
+			}
+		}
+		catch (UnpackDataException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new UnpackDataException(e.getMessage(), e);
+		}
+	}
+	
+	private void add(Object key, int start, int end)
+	{
+		final int index = _size++;
+		if (index == _starts.length)
+		{
+			final int capacity = index * 2;
+			_starts = Arrays.copyOf(_starts, capacity);
+			_ends = Arrays.copyOf(_ends, capacity);
+			_elementCycles = Arrays.copyOf(_elementCycles, capacity);
+			_next = Arrays.copyOf(_next, capacity);
+		}
+		
+		_starts[index] = start;
+		_ends[index] = end;
+		_elementCycles[index] = _cycles.size() - 1;
+		_next[index] = -1;
+		if (key != null)
+		{
+			final int[] range = _keys.get(key);
+			if (range == null)
+			{
+				_keys.put(key, new int[]
+				{
+					index,
+					index
+				});
+			}
+			else
+			{
+				_next[range[1]] = index;
+				range[1] = index;
+			}
+		}
+	}
+	
+	/**
+	 * @return the number of indexed elements
+	 */
+	public int size()
+	{
+		return _size;
+	}
+	
+	/**
+	 * @param index the element index, in file order
+	 * @return the position of the first byte of the element
+	 */
+	public int getPosition(int index)
+	{
+		return _starts[index];
+	}
+	
+	/**
+	 * Decodes one element.
+	 * @param index the element index, in file order
+	 * @return the element
+	 * @throws UnpackDataException if the element cannot be decoded on its own
+	 */
+	public DatRecord getRecord(int index) throws UnpackDataException
+	{
+		final Cycle cycle = _cycles.get(_elementCycles[index]);
+		final ByteBuffer data = _data.duplicate();
+		data.position(_starts[index]);
+		final RecordBuilder builder = new RecordBuilder(new DatRecord(null));
+		final PlanReader reader = new PlanReader(_plan, data, builder, null, _currentFile, _crypter, true, _currentFile != null);
+		reader.getSlots().copyFrom(cycle.slots);
+		try
+		{
+			if (!reader.readIteration(cycle.op.body, index - cycle.firstElement, cycle.size, 0))
+			{
+				throw error(builder.getErrorOp(), data.position());
+			}
+		}
+		catch (UnpackDataException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new UnpackDataException(e.getMessage(), e);
+		}
+		
+		// Elements depending on variables set by a previous element cannot be decoded alone.
+		if (data.position() != _ends[index])
+		{
+			throw new UnpackDataException("Element " + index + " of cycle " + cycle.op.name + " ends at position " + data.position() + " instead of " + _ends[index]);
+		}
+		return builder.takeElement();
+	}
+	
+	/**
+	 * @param id the value of the first field
+	 * @return the elements whose first field is the number {@code id}, in file order
+	 * @throws UnpackDataException if an element cannot be decoded on its own
+	 */
+	public List<DatRecord> find(long id) throws UnpackDataException
+	{
+		return find(Long.valueOf(id));
+	}
+	
+	/**
+	 * @param key the value of the first field
+	 * @return the elements whose first field is the text {@code key}, in file order
+	 * @throws UnpackDataException if an element cannot be decoded on its own
+	 */
+	public List<DatRecord> find(String key) throws UnpackDataException
+	{
+		return find((Object) key);
+	}
+	
+	/**
+	 * @param id the value of the first field
+	 * @return the first element whose first field is the number {@code id}, or {@code null}
+	 * @throws UnpackDataException if the element cannot be decoded on its own
+	 */
+	public DatRecord get(long id) throws UnpackDataException
+	{
+		final int[] range = _keys.get(Long.valueOf(id));
+		return range == null ? null : getRecord(range[0]);
+	}
+	
+	private List<DatRecord> find(Object key) throws UnpackDataException
+	{
+		final int[] range = _keys.get(key);
+		if (range == null)
+		{
+			return Collections.emptyList();
+		}
+		
+		final List<DatRecord> records = new ArrayList<>();
+		for (int index = range[0]; index >= 0; index = _next[index])
+		{
+			records.add(getRecord(index));
+		}
+		return records;
+	}
+	
+	private static UnpackDataException error(Op op, int position)
+	{
+		if (op == null)
+		{
+			return new UnpackDataException("Error while parsing data at position " + position);
+		}
+		return new UnpackDataException(String.format("Error while parsing variable NAME[%s] TYPE[%s] at position %d", op.name, op.type, position));
+	}
+	
+	private static class Cycle
+	{
+		final Op op;
+		final int size;
+		final int firstElement;
+		/** Variables as they were when the cycle started. */
+		final VariableSlots slots;
+		
+		Cycle(Op op, int size, int firstElement, VariableSlots slots)
+		{
+			this.op = op;
+			this.size = size;
+			this.firstElement = firstElement;
+			this.slots = slots;
+		}
+	}
+	
+	/**
+	 * Keeps only the first value of the current top-level element that is not a cycle size, and lets the reader step over the values it does not need.
+	 */
+	private static class KeyCollector implements PlanVisitor
+	{
+		private int _depth;
+		private Object _key;
+		private Op _errorOp;
+		
+		private static boolean isElement(Block block)
+		{
+			return (block.owner != null) && (block.owner.kind == ParamNodeType.FOR);
+		}
+		
+		private boolean isKey(Op op)
+		{
+			return (_depth == 1) && (_key == null) && !op.iterator;
+		}
+		
+		private void setKey(Op op, Object key)
+		{
+			if (isKey(op))
+			{
+				_key = key;
+			}
+		}
+		
+		@Override
+		public boolean wantsValue(Op op)
+		{
+			return isKey(op);
+		}
+		
+		@Override
+		public void beginIteration(Block block, int index)
+		{
+			if (isElement(block))
+			{
+				++_depth;
+			}
+		}
+		
+		@Override
+		public void endIteration(Block block, int index, int size, boolean success)
+		{
+			if (isElement(block))
+			{
+				--_depth;
+			}
+		}
+		
+		@Override
+		public void beginNode(Op op)
+		{
+		}
+		
+		@Override
+		public void endNode(Op op)
+		{
+		}
+		
+		@Override
+		public void beginCycle(Op op, int size)
+		{
+		}
+		
+		@Override
+		public void endCycle(Op op, int size)
+		{
+		}
+		
+		@Override
+		public void constant(Op op)
+		{
+		}
+		
+		@Override
+		public void intValue(Op op, long value)
+		{
+			setKey(op, Long.valueOf(value));
+		}
+		
+		@Override
+		public void floatValue(Op op, float value)
+		{
+			setKey(op, Double.valueOf(value));
+		}
+		
+		@Override
+		public void doubleValue(Op op, double value)
+		{
+			setKey(op, Double.valueOf(value));
+		}
+		
+		@Override
+		public void stringValue(Op op, String value, boolean isRaw)
+		{
+			setKey(op, value);
+		}
+		
+		@Override
+		public void readError(Op op)
+		{
+			_errorOp = op;
+		}
+	}
+}
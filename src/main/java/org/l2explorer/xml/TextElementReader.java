@@ -0,0 +1,216 @@
+/*
+ * This file is part of the L2ExplorerDat project.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.l2explorer.xml;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Set;
+
+/**
+ * Reads the elements of the top level cycles from the text format one at a time, for the streamed pack of {@link DescriptorWriter}.<br>
+ * Fields and markers are found the same way as in {@link TextLexer}, on the text as read: every line feed ends a field. Only the element being read is kept in memory.
+ */
+final class TextElementReader implements AutoCloseable
+{
+	private static final String BEGIN_SUFFIX = "_begin";
+	private static final String END_SUFFIX = "_end";
+	private static final int CHUNK_SIZE = 64 * 1024;
+	
+	private final Reader _reader;
+	private final char[] _chunk = new char[CHUNK_SIZE];
+	private int _chunkPosition;
+	private int _chunkLength;
+	
+	private final StringBuilder _field = new StringBuilder();
+	private boolean _fieldHasValue;
+	/** The character that ended the current field, or -1 at the end of the text. */
+	private int _separator;
+	/** Where to go on with the markers of the current field, or -1 once it is done. */
+	private int _wordStart = -1;
+	
+	/** Name of the element being read, or null between elements. */
+	private String _open;
+	/** Start of the element text in the current field. */
+	private int _bodyStart;
+	private final StringBuilder _body = new StringBuilder();
+	
+	TextElementReader(Reader reader)
+	{
+		_reader = reader;
+	}
+	
+	/**
+	 * Reads up to the end of the next element of one of the given cycles. Each element runs from a {@code name_begin} marker to the next {@code name_end} marker, the text between them is then available from {@link #getBody()}.
+	 * @param names the cycle names
+	 * @return the cycle name of the element, or {@code null} when there is no complete element left
+	 * @throws IOException
+	 */
+	String next(Set<String> names) throws IOException
+	{
+		while (true)
+		{
+			if (_wordStart < 0)
+			{
+				if (!readField())
+				{
+					return null;
+				}
+				
+				_wordStart = 0;
+				_bodyStart = 0;
+				if (_fieldHasValue)
+				{
+					endField();
+					continue;
+				}
+			}
+			
+			final String name = nextMarker(names);
+			if (name != null)
+			{
+				return name;
+			}
+			endField();
+		}
+	}
+	
+	/**
+	 * @return the text of the last element returned by {@link #next(Set)}, between its markers
+	 */
+	String getBody()
+	{
+		return _body.toString();
+	}
+	
+	private boolean readField() throws IOException
+	{
+		final StringBuilder field = _field;
+		field.setLength(0);
+		_fieldHasValue = false;
+		while (true)
+		{
+			if (_chunkPosition == _chunkLength)
+			{
+				_chunkLength = _reader.read(_chunk);
+				_chunkPosition = 0;
+				if (_chunkLength < 0)
+				{
+					_chunkLength = 0;
+					_separator = -1;
+					return field.length() > 0;
+				}
+			}
+			
+			final char[] chunk = _chunk;
+			final int start = _chunkPosition;
+			final int end = _chunkLength;
+			for (int i = start; i < end; i++)
+			{
+				final char c = chunk[i];
+				if ((c == '\t') || (c == '\n'))
+				{
+					field.append(chunk, start, i - start);
+					_chunkPosition = i + 1;
+					_separator = c;
+					return true;
+				}
+				else if (c == '=')
+				{
+					_fieldHasValue = true;
+				}
+			}
+			field.append(chunk, start, end - start);
+			_chunkPosition = end;
+		}
+	}
+	
+	/**
+	 * Adds what is left of the current field to the element being read.
+	 */
+	private void endField()
+	{
+		if (_open != null)
+		{
+			_body.append(_field, _bodyStart, _field.length());
+			if (_separator >= 0)
+			{
+				_body.append((char) _separator);
+			}
+		}
+		_wordStart = -1;
+	}
+	
+	/**
+	 * Goes on with the words of the current field, a field without value may hold several of them.
+	 * @return the cycle name of the element ended by a word of the field, or {@code null} if the field has no such word left
+	 */
+	private String nextMarker(Set<String> names)
+	{
+		final StringBuilder field = _field;
+		final int length = field.length();
+		int wordStart = _wordStart;
+		for (int i = wordStart; i <= length; i++)
+		{
+			if ((i < length) && !Character.isWhitespace(field.charAt(i)))
+			{
+				continue;
+			}
+			
+			if (_open == null)
+			{
+				if (((i - wordStart) > BEGIN_SUFFIX.length()) && matches(field, i - BEGIN_SUFFIX.length(), BEGIN_SUFFIX))
+				{
+					final String name = field.substring(wordStart, i - BEGIN_SUFFIX.length());
+					if (names.contains(name))
+					{
+						_open = name;
+						_body.setLength(0);
+						_bodyStart = i;
+					}
+				}
+			}
+			else if (((i - wordStart) == (_open.length() + END_SUFFIX.length())) && matches(field, i - END_SUFFIX.length(), END_SUFFIX) && matches(field, wordStart, _open))
+			{
+				final String name = _open;
+				_body.append(field, _bodyStart, wordStart);
+				_open = null;
+				_wordStart = i;
+				return name;
+			}
+			wordStart = i + 1;
+		}
+		return null;
+	}
+	
+	private static boolean matches(StringBuilder field, int start, String text)
+	{
+		for (int i = 0; i < text.length(); i++)
+		{
+			if (field.charAt(start + i) != text.charAt(i))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		_reader.close();
+	}
+}
@@ -0,0 +1,209 @@
+/*
+ * This file is part of the L2ExplorerDat project.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.l2explorer.xml;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Splits the text format of the unpacked .dat files in one pass, for {@link DescriptorWriter}.<br>
+ * Fields are separated by tabs and line breaks. Only the {@code name_begin} and {@code name_end} markers of named cycles are kept as tokens; the {@code key=value} fields between them are read straight from the text when an element is packed.<br>
+ * A range of tokens {@code [from, to)} also stands for the text between the marker before {@code from} and the marker at {@code to}.
+ */
+final class TextLexer
+{
+	private static final String BEGIN_SUFFIX = "_begin";
+	private static final String END_SUFFIX = "_end";
+	private static final int INITIAL_CAPACITY = 1024;
+	
+	private final String _text;
+	private boolean[] _begins = new boolean[INITIAL_CAPACITY];
+	/** Start of each marker in the text. */
+	private int[] _starts = new int[INITIAL_CAPACITY];
+	/** End of the cycle name of each marker, before its suffix. */
+	private int[] _nameEnds = new int[INITIAL_CAPACITY];
+	private int _size;
+	
+	TextLexer(String text)
+	{
+		_text = text;
+		final int length = text.length();
+		int fieldStart = 0;
+		boolean hasValue = false;
+		for (int i = 0; i <= length; i++)
+		{
+			final int separator = getSeparatorLength(text, i, length);
+			if (separator > 0)
+			{
+				if (!hasValue)
+				{
+					addMarkers(fieldStart, i);
+				}
+				i += separator - 1;
+				fieldStart = i + 1;
+				hasValue = false;
+			}
+			else if (text.charAt(i) == '=')
+			{
+				hasValue = true;
+			}
+		}
+	}
+	
+	/**
+	 * @param text the text
+	 * @param index an index of the text, up to {@code length}
+	 * @param length the end of the scanned text
+	 * @return the length of the field separator at {@code index}: 1 for a tab or the end of the text, 2 for a line break, 0 if there is none
+	 */
+	private static int getSeparatorLength(String text, int index, int length)
+	{
+		if (index == length)
+		{
+			return 1;
+		}
+		
+		final char c = text.charAt(index);
+		if (c == '\t')
+		{
+			return 1;
+		}
+		return ((c == '\r') && ((index + 1) < length) && (text.charAt(index + 1) == '\n')) ? 2 : 0;
+	}
+	
+	/**
+	 * Adds the markers of a field without value. A field may hold several words when the lines end with a lone line feed.
+	 */
+	private void addMarkers(int start, int end)
+	{
+		int wordStart = start;
+		for (int i = start; i <= end; i++)
+		{
+			if ((i == end) || Character.isWhitespace(_text.charAt(i)))
+			{
+				if (_text.startsWith(BEGIN_SUFFIX, i - BEGIN_SUFFIX.length()) && ((i - wordStart) > BEGIN_SUFFIX.length()))
+				{
+					add(true, wordStart, i - BEGIN_SUFFIX.length());
+				}
+				else if (_text.startsWith(END_SUFFIX, i - END_SUFFIX.length()) && ((i - wordStart) > END_SUFFIX.length()))
+				{
+					add(false, wordStart, i - END_SUFFIX.length());
+				}
+				wordStart = i + 1;
+			}
+		}
+	}
+	
+	private void add(boolean begin, int start, int nameEnd)
+	{
+		if (_size == _starts.length)
+		{
+			final int capacity = _size * 2;
+			_begins = Arrays.copyOf(_begins, capacity);
+			_starts = Arrays.copyOf(_starts, capacity);
+			_nameEnds = Arrays.copyOf(_nameEnds, capacity);
+		}
+		_begins[_size] = begin;
+		_starts[_size] = start;
+		_nameEnds[_size] = nameEnd;
+		_size++;
+	}
+	
+	/**
+	 * @return the number of markers
+	 */
+	int size()
+	{
+		return _size;
+	}
+	
+	/**
+	 * Finds the elements of a named cycle. Each element runs from a {@code name_begin} marker to the next {@code name_end} marker.
+	 * @param name the cycle name
+	 * @param from the first marker to search
+	 * @param to the end of the markers to search, exclusive
+	 * @return the token range of each element, as {@code from, to} pairs
+	 */
+	int[] findElements(String name, int from, int to)
+	{
+		int[] elements = new int[16];
+		int count = 0;
+		for (int i = from; i < to; i++)
+		{
+			if (!_begins[i] || !isName(i, name))
+			{
+				continue;
+			}
+			
+			int end = i + 1;
+			while ((end < to) && (_begins[end] || !isName(end, name)))
+			{
+				end++;
+			}
+			if (end == to)
+			{
+				break;
+			}
+			
+			if ((count + 2) > elements.length)
+			{
+				elements = Arrays.copyOf(elements, elements.length * 2);
+			}
+			elements[count++] = i + 1;
+			elements[count++] = end;
+			i = end;
+		}
+		return Arrays.copyOf(elements, count);
+	}
+	
+	private boolean isName(int index, String name)
+	{
+		return ((_nameEnds[index] - _starts[index]) == name.length()) && _text.startsWith(name, _starts[index]);
+	}
+	
+	/**
+	 * Stores the {@code key=value} fields of a token range, including those of nested elements, in text order.
+	 * @param values the values by key, later fields replacing earlier ones
+	 * @param from the first marker of the range
+	 * @param to the end of the range, exclusive
+	 */
+	void putValues(Map<String, String> values, int from, int to)
+	{
+		final String text = _text;
+		final int end = (to == _size) ? text.length() : _starts[to];
+		int fieldStart = (from == 0) ? 0 : (_nameEnds[from - 1] + (_begins[from - 1] ? BEGIN_SUFFIX.length() : END_SUFFIX.length()));
+		int separator = -1;
+		for (int i = fieldStart; i <= end; i++)
+		{
+			final int separatorLength = getSeparatorLength(text, i, end);
+			if (separatorLength > 0)
+			{
+				if (separator >= 0)
+				{
+					values.put(text.substring(fieldStart, separator), text.substring(separator + 1, i));
+				}
+				i += separatorLength - 1;
+				fieldStart = i + 1;
+				separator = -1;
+			}
+			else if ((separator < 0) && (text.charAt(i) == '='))
+			{
+				separator = i;
+			}
+		}
+	}
+}
@@ -0,0 +1,278 @@
+/*
+ * This file is part of the L2ExplorerDat project.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.l2explorer.xml;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import org.l2explorer.L2ExplorerDat;
+import org.l2explorer.config.ConfigDebug;
+import org.l2explorer.util.DebugUtil;
+import org.l2explorer.xml.ReaderPlan.Block;
+import org.l2explorer.xml.ReaderPlan.Op;
+
+/**
+ * Renders the values read by a {@link PlanReader} into the text format of the unpacked .dat files.
+ */
+final class TextRenderer implements PlanVisitor
+{
+	private static final String TAB = "\t";
+	private static final String SEMI = ";";
+	private static final String LB = "[";
+	private static final String RB = "]";
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+	
+	private final TextSink _out;
+	private final File _currentFile;
+	private final boolean _mass;
+	private final boolean _replaceEnums;
+	private PlanReader _reader;
+	/** Output length at the start of each running block, for error messages. */
+	private long[] _blockStarts = new long[16];
+	private int _depth;
+	private long _valueStart;
+	/** The cycle whose current element is kept in memory by the sink mark. */
+	private Block _markedBlock;
+	
+	TextRenderer(TextSink out, File currentFile, boolean mass, boolean replaceEnums)
+	{
+		_out = out;
+		_currentFile = currentFile;
+		_mass = mass;
+		_replaceEnums = replaceEnums;
+	}
+	
+	void setReader(PlanReader reader)
+	{
+		_reader = reader;
+	}
+	
+	@Override
+	public void beginIteration(Block block, int index)
+	{
+		if (index == 0)
+		{
+			if (_depth == _blockStarts.length)
+			{
+				_blockStarts = Arrays.copyOf(_blockStarts, _depth * 2);
+			}
+			_blockStarts[_depth++] = _out.length();
+		}
+		
+		if ((_markedBlock == null) && (block.owner != null) && (block.owner.kind == ParamNodeType.FOR))
+		{
+			_markedBlock = block;
+			_out.mark();
+		}
+		
+		if (block.begin != null)
+		{
+			_out.append(block.begin);
+		}
+		else if (block.braces)
+		{
+			_out.append('{');
+		}
+	}
+	
+	@Override
+	public void endIteration(Block block, int index, int size, boolean success) throws IOException
+	{
+		// The element stays marked and in memory, so rollback() can drop it.
+		if (!success)
+		{
+			return;
+		}
+		
+		final TextSink out = _out;
+		if (block.hidden)
+		{
+			if (block.braces)
+			{
+				out.append('}');
+			}
+			if (index < (size - 1))
+			{
+				out.append(SEMI);
+			}
+		}
+		if (block.end != null)
+		{
+			if (out.lastChar() != '\n')
+			{
+				out.append(TAB);
+			}
+			out.append(block.end);
+		}
+		
+		if (index == (size - 1))
+		{
+			--_depth;
+		}
+		
+		if (block == _markedBlock)
+		{
+			_markedBlock = null;
+			out.unmark();
+		}
+		out.flushIfNeeded();
+	}
+	
+	/**
+	 * Drops the text of the cycle element being rendered, so the output ends with the last complete element.
+	 */
+	void rollback()
+	{
+		_out.reset();
+		_markedBlock = null;
+	}
+	
+	@Override
+	public void beginNode(Op op)
+	{
+		if (op.prefix != null)
+		{
+			_out.append(op.prefix);
+		}
+		_valueStart = _out.length();
+	}
+	
+	@Override
+	public void endNode(Op op)
+	{
+		if (ConfigDebug.DAT_DEBUG_POS && (op.kind == ParamNodeType.VARIABLE))
+		{
+			final VariableSlots slots = _reader.getSlots();
+			DebugUtil.debugPos(_reader.getData().position(), op.name, (op.slot >= 0) ? slots.toString(op.slot) : _out.substring(_valueStart));
+		}
+		
+		if (op.separator)
+		{
+			_out.append(SEMI);
+		}
+	}
+	
+	@Override
+	public void beginCycle(Op op, int size)
+	{
+		if (op.braces)
+		{
+			_out.append('{');
+		}
+	}
+	
+	@Override
+	public void endCycle(Op op, int size)
+	{
+		if (op.braces)
+		{
+			_out.append('}');
+		}
+	}
+	
+	@Override
+	public void constant(Op op)
+	{
+		_out.append(op.text);
+	}
+	
+	@Override
+	public void intValue(Op op, long value)
+	{
+		if (op.iterator)
+		{
+			return;
+		}
+		
+		switch (op.type)
+		{
+			case HEX:
+			{
+				_out.append(HEX_DIGITS[(int) value >> 4]).append(HEX_DIGITS[(int) value & 0xF]);
+				break;
+			}
+			case LONG:
+			case MAP_INT:
+			{
+				_out.append(value);
+				break;
+			}
+			default:
+			{
+				if (_replaceEnums && (op.enumName != null))
+				{
+					_out.append(op.getEnumName((int) value));
+				}
+				else
+				{
+					_out.append(value);
+				}
+				break;
+			}
+		}
+	}
+	
+	@Override
+	public void floatValue(Op op, float value)
+	{
+		if (!op.iterator)
+		{
+			_out.append(value);
+		}
+	}
+	
+	@Override
+	public void doubleValue(Op op, double value)
+	{
+		if (!op.iterator)
+		{
+			_out.append(new BigDecimal(Double.toString(value)).toPlainString());
+		}
+	}
+	
+	@Override
+	public void stringValue(Op op, String value, boolean isRaw)
+	{
+		if (isRaw)
+		{
+			_out.append(value);
+		}
+		else if (!op.iterator)
+		{
+			if ((op.type == ParamType.UNICODE) || (op.type == ParamType.ASCF))
+			{
+				_out.append(LB).append(value).append(RB);
+			}
+			else
+			{
+				_out.append(value);
+			}
+		}
+	}
+	
+	@Override
+	public void readError(Op op)
+	{
+		if (!_mass)
+		{
+			final long start = (_depth > 0) ? _blockStarts[_depth - 1] : 0;
+			L2ExplorerDat.addLogConsole(String.format("Error while parsing variable NAME[%s] TYPE[%s] in file NAME[%s]! Parsed data: %s", op.name, op.type, _currentFile.getName(), _out.substring(start)), true);
+		}
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * This file is part of the L2ExplorerDat project.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.l2explorer.xml;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Growable output of a {@link TextRenderer}.<br>
+ * Without a writer the whole text stays in memory. With a writer, the text is flushed in large chunks while it is rendered, except what follows the current mark, which is kept so it can still be reset.<br>
+ * Leading and trailing whitespace are dropped from the final text, like {@link String#trim()}.
+ */
+final class TextSink
+{
+	private static final int FLUSH_THRESHOLD = 1024 * 1024;
+	
+	private final StringBuilder _buffer;
+	private final Writer _writer;
+	/** Number of characters already moved out of the buffer. */
+	private long _flushed;
+	private char _lastFlushed;
+	/** {@code true} once a non whitespace character was written to the writer. */
+	private boolean _started;
+	private long _mark = -1;
+	
+	/**
+	 * @param capacity the initial buffer capacity
+	 * @param writer the destination of the text, or {@code null} to keep it in memory
+	 */
+	TextSink(int capacity, Writer writer)
+	{
+		_buffer = new StringBuilder((writer != null) ? Math.min(capacity, FLUSH_THRESHOLD * 2) : capacity);
+		_writer = writer;
+	}
+	
+	TextSink append(String str)
+	{
+		_buffer.append(str);
+		return this;
+	}
+	
+	TextSink append(char c)
+	{
+		_buffer.append(c);
+		return this;
+	}
+	
+	TextSink append(long value)
+	{
+		_buffer.append(value);
+		return this;
+	}
+	
+	TextSink append(float value)
+	{
+		_buffer.append(value);
+		return this;
+	}
+	
+	/**
+	 * @return the number of characters rendered so far
+	 */
+	long length()
+	{
+		return _flushed + _buffer.length();
+	}
+	
+	/**
+	 * @return the last rendered character, or 0 if nothing was rendered
+	 */
+	char lastChar()
+	{
+		final int length = _buffer.length();
+		return (length > 0) ? _buffer.charAt(length - 1) : _lastFlushed;
+	}
+	
+	/**
+	 * @param start a position returned by {@link #length()}
+	 * @return the text rendered since {@code start}, or since the last flush if that part is already written
+	 */
+	String substring(long start)
+	{
+		return _buffer.substring((int) Math.max(0, start - _flushed));
+	}
+	
+	/**
+	 * Keeps everything rendered from now on in memory until {@link #unmark()} or {@link #reset()}.
+	 */
+	void mark()
+	{
+		_mark = length();
+	}
+	
+	void unmark()
+	{
+		_mark = -1;
+	}
+	
+	/**
+	 * Drops everything rendered since the last {@link #mark()}.
+	 */
+	void reset()
+	{
+		if (_mark >= 0)
+		{
+			_buffer.setLength((int) (_mark - _flushed));
+			_mark = -1;
+		}
+	}
+	
+	boolean isMarked()
+	{
+		return _mark >= 0;
+	}
+	
+	/**
+	 * Writes the buffered text out once it is large enough. Does nothing without a writer.
+	 * @throws IOException if the writer fails
+	 */
+	void flushIfNeeded() throws IOException
+	{
+		if ((_writer != null) && (_buffer.length() >= FLUSH_THRESHOLD))
+		{
+			// Never write the trailing whitespace: it is dropped if nothing follows it.
+			int end = (_mark >= 0) ? (int) (_mark - _flushed) : _buffer.length();
+			while ((end > 0) && (_buffer.charAt(end - 1) <= ' '))
+			{
+				--end;
+			}
+			write(end);
+		}
+	}
+	
+	/**
+	 * Writes the remaining text without its trailing whitespace.
+	 * @throws IOException if the writer fails
+	 */
+	void finish() throws IOException
+	{
+		_mark = -1;
+		int end = _buffer.length();
+		while ((end > 0) && (_buffer.charAt(end - 1) <= ' '))
+		{
+			--end;
+		}
+		write(end);
+	}
+	
+	private void write(int end) throws IOException
+	{
+		if (end <= 0)
+		{
+			return;
+		}
+		
+		int start = 0;
+		if (!_started)
+		{
+			while ((start < end) && (_buffer.charAt(start) <= ' '))
+			{
+				++start;
+			}
+			_started = start < end;
+		}
+		
+		if (start < end)
+		{
+			_writer.append(_buffer, start, end);
+		}
+		_lastFlushed = _buffer.charAt(end - 1);
+		_buffer.delete(0, end);
+		_flushed += end;
+	}
+	
+	/**
+	 * @return the whole text, trimmed, if it is kept in memory
+	 */
+	String toTrimmedString()
+	{
+		int start = 0;
+		int end = _buffer.length();
+		while ((start < end) && (_buffer.charAt(start) <= ' '))
+		{
+			++start;
+		}
+		while ((end > start) && (_buffer.charAt(end - 1) <= ' '))
+		{
+			--end;
+		}
+		return _buffer.substring(start, end);
+	}
+	
+	@Override
+	public String toString()
+	{
+		return _buffer.toString();
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * This file is part of the L2ExplorerDat project.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.l2explorer.xml;
+
+/**
+ * Values of the variables referenced by a {@link ReaderPlan} (cycle sizes, {@code if} and {@code mask} parameters).<br>
+ * Each referenced name owns a fixed slot assigned when the plan is compiled; values are kept unboxed in primitive arrays.
+ */
+final class VariableSlots
+{
+	static final byte NONE = 0;
+	static final byte INT = 1;
+	static final byte SHORT = 2;
+	static final byte LONG = 3;
+	static final byte FLOAT = 4;
+	static final byte DOUBLE = 5;
+	static final byte STRING = 6;
+	
+	private final byte[] _types;
+	private final long[] _longs;
+	private final double[] _doubles;
+	private final String[] _strings;
+	
+	VariableSlots(int size)
+	{
+		_types = new byte[size];
+		_longs = new long[size];
+		_doubles = new double[size];
+		_strings = new String[size];
+	}
+	
+	/**
+	 * @return an independent copy of the current values
+	 */
+	VariableSlots copy()
+	{
+		final VariableSlots copy = new VariableSlots(_types.length);
+		copy.copyFrom(this);
+		return copy;
+	}
+	
+	/**
+	 * Replaces all values by the ones of {@code other}.
+	 * @param other slots of the same plan
+	 */
+	void copyFrom(VariableSlots other)
+	{
+		System.arraycopy(other._types, 0, _types, 0, _types.length);
+		System.arraycopy(other._longs, 0, _longs, 0, _longs.length);
+		System.arraycopy(other._doubles, 0, _doubles, 0, _doubles.length);
+		System.arraycopy(other._strings, 0, _strings, 0, _strings.length);
+	}
+	
+	void setLong(int slot, byte type, long value)
+	{
+		_types[slot] = type;
+		_longs[slot] = value;
+	}
+	
+	void setDouble(int slot, byte type, double value)
+	{
+		_types[slot] = type;
+		_doubles[slot] = value;
+	}
+	
+	void setString(int slot, String value)
+	{
+		_types[slot] = STRING;
+		_strings[slot] = value;
+	}
+	
+	boolean isSet(int slot)
+	{
+		return (slot >= 0) && (_types[slot] != NONE);
+	}
+	
+	/**
+	 * @param slot a non empty slot
+	 * @return {@code true} if the slot holds a value usable as a cycle size
+	 */
+	boolean isSize(int slot)
+	{
+		return (_types[slot] == INT) || (_types[slot] == SHORT);
+	}
+	
+	/**
+	 * @param slot a slot for which {@link #isSize(int)} is {@code true}
+	 * @return the cycle size stored in the slot
+	 */
+	int getSize(int slot)
+	{
+		return (_types[slot] == SHORT) ? (short) _longs[slot] : (int) _longs[slot];
+	}
+	
+	/**
+	 * @param slot a non empty slot
+	 * @return the value of the slot as an int, as used by {@code mask} nodes
+	 * @throws NumberFormatException if the value is not an int
+	 */
+	int getMask(int slot)
+	{
+		switch (_types[slot])
+		{
+			case INT:
+			case SHORT:
+			{
+				return (int) _longs[slot];
+			}
+			default:
+			{
+				return Integer.parseInt(toString(slot));
+			}
+		}
+	}
+	
+	/**
+	 * Compares a non empty slot with the value of an {@code if} node, ignoring case.
+	 * @param slot the slot
+	 * @param text the expected value
+	 * @param number {@code text} as a number, only valid if {@code numeric} is set
+	 * @param numeric {@code true} if {@code text} is the canonical decimal form of {@code number}
+	 * @return {@code true} if the printed value of the slot equals {@code text}
+	 */
+	boolean matches(int slot, String text, long number, boolean numeric)
+	{
+		switch (_types[slot])
+		{
+			case INT:
+			case SHORT:
+			case LONG:
+			{
+				return numeric && (_longs[slot] == number);
+			}
+			default:
+			{
+				return toString(slot).equalsIgnoreCase(text);
+			}
+		}
+	}
+	
+	String toString(int slot)
+	{
+		switch (_types[slot])
+		{
+			case INT:
+			case SHORT:
+			case LONG:
+			{
+				return Long.toString(_longs[slot]);
+			}
+			case FLOAT:
+			{
+				return Float.toString((float) _doubles[slot]);
+			}
+			case DOUBLE:
+			{
+				return Double.toString(_doubles[slot]);
+			}
+			case STRING:
+			{
+				return _strings[slot];
+			}
+			default:
+			{
+				return null;
+			}
+		}
+	}
+}